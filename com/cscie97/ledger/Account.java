@@ -11,7 +11,7 @@ package com.cscie97.ledger;
 public class Account {
 
     private String address;
-    private int balance;
+    private long balance;
 
     /**
      * Class Constructor
@@ -38,9 +38,9 @@ public class Account {
     /**
      * get balance
      *
-     * @return {@link int}
+     * @return {@link long}
      */
-    public int getBalance() {
+    public long getBalance() {
         return this.balance;
     }
 
@@ -60,7 +60,7 @@ public class Account {
      *
      * @param balance balance
      */
-    public void setBalance(int balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
 }
@@ -0,0 +1,301 @@
+package com.cscie97.ledger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the account balances of the Ledger in primitive arrays.
+ * <p>
+ * Each address is interned to a dense int id when its account is created, and the balance
+ * of each account is kept in a long array indexed by id, so a transaction resolves its payer
+ * and receiver once and then changes balances with array writes, allocating nothing.
+ * Two balances are kept for every account: its live balance, including the changes made by
+ * the open block, and its committed balance, as of the last committed block. Accounts created
+ * in the open block have the highest ids, so an account has been committed if its id is below
+ * the number of committed accounts.
+ * <p>
+ * The store records which accounts the open block has changed. When the block is closed,
+ * only those accounts are copied into Account objects, for the block's account balance map,
+ * and their live balances become their committed balances. Each committed balance is also
+ * appended to the {@link BalanceHistory}, which answers balances as of earlier blocks.
+ * <p>
+ * Accounts are only created, and blocks only committed, while the Ledger's seal lock is held
+ * exclusively, so the arrays are never replaced while a transaction is being applied.
+ * A balance is only changed while its account's lock is held, or the seal lock exclusively.
+ *
+ * @see Ledger
+ * @see Block
+ * @see Account
+ * @author austinhigh
+ */
+public class AccountStore {
+
+    /**
+     * Id of the master account, which is always the first account of the chain to be created.
+     */
+    public static final int MASTER_ID = 0;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final HashMap<String, Integer> ids;
+    private String[] addresses;
+    private long[] balances;
+    private long[] committedBalances;
+    // number of the last block to change each account
+    private int[] changedIn;
+    // ids of the accounts changed by the open block
+    private int[] changed;
+    private final AtomicInteger changedCount;
+    private final BalanceHistory history;
+    private int size;
+    private int committedCount;
+
+    /**
+     * Class Constructor.
+     */
+    public AccountStore() {
+        this.ids = new HashMap<String, Integer>();
+        this.addresses = new String[INITIAL_CAPACITY];
+        this.balances = new long[INITIAL_CAPACITY];
+        this.committedBalances = new long[INITIAL_CAPACITY];
+        this.changedIn = new int[INITIAL_CAPACITY];
+        this.changed = new int[INITIAL_CAPACITY];
+        this.changedCount = new AtomicInteger();
+        this.history = new BalanceHistory();
+    }
+
+    /**
+     * Creates an account in the open block.
+     *
+     * @param address account address
+     * @param balance initial balance
+     * @param blockNumber number of the open block
+     * @return {@link int} id of the new account
+     */
+    public int create(String address, long balance, int blockNumber) {
+        if (size == addresses.length) {
+            grow(size * 2);
+        }
+        int id = size++;
+        ids.put(address, id);
+        addresses[id] = address;
+        balances[id] = balance;
+        markChanged(id, blockNumber);
+        return id;
+    }
+
+    /**
+     * Returns the id of the account with the given address.
+     *
+     * @param address account address
+     * @return {@link int} or -1 if no account has the address
+     */
+    public int getId(String address) {
+        Integer id = ids.get(address);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * get address
+     *
+     * @param id account id
+     * @return {@link String}
+     * @see String
+     */
+    public String getAddress(int id) {
+        return this.addresses[id];
+    }
+
+    /**
+     * Checks whether an account has been committed to the blockchain.
+     *
+     * @param id account id, or -1
+     * @return {@link boolean}
+     */
+    public boolean isCommitted(int id) {
+        return id >= 0 && id < committedCount;
+    }
+
+    /**
+     * get committed count
+     *
+     * @return {@link int} number of committed accounts, whose ids run from 0
+     */
+    public int getCommittedCount() {
+        return this.committedCount;
+    }
+
+    /**
+     * Returns the live balance of an account, including the open block's changes.
+     *
+     * @param id account id
+     * @return {@link long}
+     */
+    public long getBalance(int id) {
+        return balances[id];
+    }
+
+    /**
+     * Returns the balance of a committed account as of the last committed block.
+     *
+     * @param id account id
+     * @return {@link long}
+     */
+    public long getCommittedBalance(int id) {
+        return committedBalances[id];
+    }
+
+    /**
+     * Checks whether an account had been committed as of a committed block.
+     *
+     * @param id account id, or -1
+     * @param blockNumber number of a committed block
+     * @return {@link boolean}
+     */
+    public boolean isCommitted(int id, int blockNumber) {
+        return history.exists(id, blockNumber);
+    }
+
+    /**
+     * Returns the balance of an account as of a committed block.
+     *
+     * @param id account id
+     * @param blockNumber number of a committed block
+     * @return {@link long}
+     * @see BalanceHistory
+     */
+    public long getCommittedBalance(int id, int blockNumber) {
+        return history.getBalance(id, blockNumber);
+    }
+
+    /**
+     * Adds to the live balance of an account, recording that the open block changed it.
+     * The caller must hold the account's lock, or the seal lock exclusively.
+     *
+     * @param id account id
+     * @param change amount to add, negative to subtract
+     * @param blockNumber number of the open block
+     * @throws ArithmeticException if the balance would overflow
+     */
+    public void adjust(int id, long change, int blockNumber) {
+        balances[id] = Math.addExact(balances[id], change);
+        markChanged(id, blockNumber);
+    }
+
+    /**
+     * Sets the live balance of an account, creating the account if needed,
+     * and records that the given block changed it. Used to restore blocks.
+     *
+     * @param address account address
+     * @param balance balance
+     * @param blockNumber number of the block
+     */
+    public void put(String address, long balance, int blockNumber) {
+        int id = getId(address);
+        if (id < 0) {
+            create(address, balance, blockNumber);
+        } else {
+            balances[id] = balance;
+            markChanged(id, blockNumber);
+        }
+    }
+
+    /**
+     * Returns the accounts changed by the open block, with their live balances.
+     *
+     * @return {@link HashMap}
+     * @see Account
+     */
+    public HashMap<String, Account> getChangedAccounts() {
+        int count = changedCount.get();
+        HashMap<String, Account> accounts = new HashMap<String, Account>(Math.max(count * 4 / 3 + 1, 16));
+        for (int i = 0; i < count; i++) {
+            int id = changed[i];
+            Account acct = new Account(addresses[id]);
+            acct.setBalance(balances[id]);
+            accounts.put(addresses[id], acct);
+        }
+        return accounts;
+    }
+
+    /**
+     * Returns the committed accounts changed by the open block, with their committed balances.
+     *
+     * @return {@link HashMap}
+     * @see Account
+     */
+    public HashMap<String, Account> getReplacedAccounts() {
+        int count = changedCount.get();
+        HashMap<String, Account> accounts = new HashMap<String, Account>();
+        for (int i = 0; i < count; i++) {
+            int id = changed[i];
+            if (id < committedCount) {
+                Account acct = new Account(addresses[id]);
+                acct.setBalance(committedBalances[id]);
+                accounts.put(addresses[id], acct);
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * Commits the changes made by the open block, making the live balances of the accounts it
+     * changed their committed balances, and committing the accounts it created.
+     * The new committed balances are recorded in the balance history.
+     */
+    public void commit() {
+        int count = changedCount.getAndSet(0);
+        for (int i = 0; i < count; i++) {
+            int id = changed[i];
+            committedBalances[id] = balances[id];
+            history.add(id, changedIn[id], balances[id]);
+        }
+        committedCount = size;
+    }
+
+    /**
+     * Applies the account changes of a block read back from the block store, or restored
+     * from a block map, and commits them.
+     *
+     * @param block committed block
+     */
+    public void commit(Block block) {
+        // restore the master account first, so it keeps the first id
+        Account master = block.getAccountBalanceMap().get("master");
+        if (master != null) {
+            put(master.getAddress(), master.getBalance(), block.getBlockNumber());
+        }
+        for (Account acct : block.getAccountBalanceMap().values()) {
+            put(acct.getAddress(), acct.getBalance(), block.getBlockNumber());
+        }
+        commit();
+    }
+
+    /**
+     * Records that the open block changed an account, the first time it does so.
+     *
+     * @param id account id
+     * @param blockNumber number of the open block
+     */
+    private void markChanged(int id, int blockNumber) {
+        if (changedIn[id] != blockNumber) {
+            changedIn[id] = blockNumber;
+            // the account's lock is held, so no other thread marks the same account
+            changed[changedCount.getAndIncrement()] = id;
+        }
+    }
+
+    /**
+     * Enlarges the arrays to the given capacity.
+     *
+     * @param capacity capacity
+     */
+    private void grow(int capacity) {
+        addresses = Arrays.copyOf(addresses, capacity);
+        balances = Arrays.copyOf(balances, capacity);
+        committedBalances = Arrays.copyOf(committedBalances, capacity);
+        changedIn = Arrays.copyOf(changedIn, capacity);
+        changed = Arrays.copyOf(changed, capacity);
+    }
+}
@@ -0,0 +1,114 @@
+package com.cscie97.ledger;
+
+import java.util.Arrays;
+
+/**
+ * Maps each account to the positions of the committed transactions it paid or received.
+ * <p>
+ * Accounts are identified by the dense ids of the {@link AccountStore}. Each account's history
+ * is a primitive long array of packed transaction positions, in the same format as the
+ * {@link TransactionIndex}, appended to as blocks are committed. Blocks are committed in order,
+ * and a block's transactions are indexed in slot order, so every history stays sorted by
+ * position without any sorting, and a page of an account's history is a slice of its array.
+ * <p>
+ * The index is changed only while the Ledger's seal lock is held exclusively,
+ * and read while it is held shared.
+ *
+ * @see Ledger
+ * @see TransactionIndex
+ * @author austinhigh
+ */
+public class AccountTransactionIndex {
+
+    private static final long[] EMPTY = new long[0];
+    private static final int INITIAL_HISTORY = 4;
+
+    private long[][] positions;
+    private int[] counts;
+
+    /**
+     * Class Constructor.
+     */
+    public AccountTransactionIndex() {
+        this.positions = new long[64][];
+        this.counts = new int[64];
+    }
+
+    /**
+     * Indexes the transactions of a committed block under their payer and receiver.
+     *
+     * @param block committed block
+     * @param accounts account store holding the payer and receiver of each transaction
+     */
+    public void add(Block block, AccountStore accounts) {
+        int blockNumber = block.getBlockNumber();
+        int slot = 0;
+        for (Transaction tx : block.getTransactionList()) {
+            long position = TransactionIndex.pack(blockNumber, slot++);
+            int payer = accounts.getId(tx.getPayer());
+            int receiver = accounts.getId(tx.getReceiver());
+            add(payer, position);
+            if (receiver != payer) {
+                add(receiver, position);
+            }
+        }
+    }
+
+    /**
+     * Appends a transaction position to the history of an account.
+     *
+     * @param accountId account id
+     * @param position packed transaction position, after every position already in the history
+     */
+    public void add(int accountId, long position) {
+        if (accountId < 0) {
+            return;
+        }
+        if (accountId >= counts.length) {
+            int capacity = Math.max(counts.length * 2, accountId + 1);
+            positions = Arrays.copyOf(positions, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        long[] history = positions[accountId];
+        if (history == null) {
+            history = positions[accountId] = new long[INITIAL_HISTORY];
+        } else if (counts[accountId] == history.length) {
+            history = positions[accountId] = Arrays.copyOf(history, history.length * 2);
+        }
+        history[counts[accountId]++] = position;
+    }
+
+    /**
+     * Returns the number of committed transactions an account has paid or received.
+     *
+     * @param accountId account id
+     * @return {@link int}
+     */
+    public int count(int accountId) {
+        return accountId >= 0 && accountId < counts.length ? counts[accountId] : 0;
+    }
+
+    /**
+     * Returns a page of an account's history, oldest first.
+     *
+     * @param accountId account id
+     * @param from index of the first transaction of the page within the history
+     * @param limit largest number of transactions in the page
+     * @return {@link long[]} packed transaction positions
+     */
+    public long[] get(int accountId, int from, int limit) {
+        int count = count(accountId);
+        if (from >= count || limit <= 0) {
+            return EMPTY;
+        }
+        return Arrays.copyOfRange(positions[accountId], from, from + Math.min(limit, count - from));
+    }
+
+    /**
+     * Removes every history from the index.
+     */
+    public void clear() {
+        Arrays.fill(positions, null);
+        Arrays.fill(counts, 0);
+    }
+}
@@ -0,0 +1,114 @@
+package com.cscie97.ledger;
+
+import java.util.Arrays;
+
+/**
+ * Records the committed balance of every account after each block that changed it.
+ * <p>
+ * Each account has a version chain: a primitive int array of the numbers of the blocks that
+ * changed the account, and a parallel long array of its balance after each of them. Blocks
+ * are committed in order, so the block numbers of a chain are ascending, and the balance of an
+ * account as of any block is found by binary search, in time logarithmic in the number of
+ * blocks that changed the account. Only changes are kept, one int and one long each,
+ * so point-in-time balances are answered without keeping a full copy of the balances per block.
+ * <p>
+ * Accounts are identified by the dense ids of the {@link AccountStore}, which appends to the
+ * history as it commits each block, while the Ledger's seal lock is held exclusively.
+ *
+ * @see AccountStore
+ * @see Ledger
+ * @author austinhigh
+ */
+public class BalanceHistory {
+
+    private static final int INITIAL_VERSIONS = 4;
+
+    private int[][] blockNumbers;
+    private long[][] balances;
+    private int[] counts;
+
+    /**
+     * Class Constructor.
+     */
+    public BalanceHistory() {
+        this.blockNumbers = new int[64][];
+        this.balances = new long[64][];
+        this.counts = new int[64];
+    }
+
+    /**
+     * Appends the balance of an account after a block that changed it.
+     * A later balance recorded for the same block replaces the earlier one.
+     *
+     * @param accountId account id
+     * @param blockNumber number of the block, at least the number of every block already in the chain
+     * @param balance balance after the block
+     */
+    public void add(int accountId, int blockNumber, long balance) {
+        if (accountId >= counts.length) {
+            int capacity = Math.max(counts.length * 2, accountId + 1);
+            blockNumbers = Arrays.copyOf(blockNumbers, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        int count = counts[accountId];
+        if (count > 0 && blockNumbers[accountId][count - 1] == blockNumber) {
+            balances[accountId][count - 1] = balance;
+            return;
+        }
+        if (blockNumbers[accountId] == null) {
+            blockNumbers[accountId] = new int[INITIAL_VERSIONS];
+            balances[accountId] = new long[INITIAL_VERSIONS];
+        } else if (count == blockNumbers[accountId].length) {
+            blockNumbers[accountId] = Arrays.copyOf(blockNumbers[accountId], count * 2);
+            balances[accountId] = Arrays.copyOf(balances[accountId], count * 2);
+        }
+        blockNumbers[accountId][count] = blockNumber;
+        balances[accountId][count] = balance;
+        counts[accountId] = count + 1;
+    }
+
+    /**
+     * Checks whether an account had been created as of a block.
+     *
+     * @param accountId account id
+     * @param blockNumber block number
+     * @return {@link boolean}
+     */
+    public boolean exists(int accountId, int blockNumber) {
+        return version(accountId, blockNumber) >= 0;
+    }
+
+    /**
+     * Returns the balance of an account as of a block, that is after the last block up to
+     * and including it that changed the account.
+     *
+     * @param accountId account id
+     * @param blockNumber block number
+     * @return {@link long}
+     * @throws IllegalArgumentException if the account had not been created as of the block
+     */
+    public long getBalance(int accountId, int blockNumber) {
+        int version = version(accountId, blockNumber);
+        if (version < 0) {
+            throw new IllegalArgumentException("account " + accountId + " does not exist as of block " + blockNumber);
+        }
+        return balances[accountId][version];
+    }
+
+    /**
+     * Finds the last version of an account recorded at or before a block.
+     *
+     * @param accountId account id
+     * @param blockNumber block number
+     * @return {@link int} index of the version in the account's chain, or -1 if there is none
+     */
+    private int version(int accountId, int blockNumber) {
+        if (accountId < 0 || accountId >= counts.length || counts[accountId] == 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(blockNumbers[accountId], 0, counts[accountId], blockNumber);
+        // an absent block falls between versions, take the version before it
+        return index >= 0 ? index : -index - 2;
+    }
+}
@@ -8,9 +8,12 @@ import java.util.Objects;
  * Represents a block in the blockchain.
  * Contains a unique identifier, the hash of the previous block, a hash of itself,
  * and account balance map, a list of all transactions, and a reference to the previous block.
+ * The account balance map only holds the accounts that were created or changed
+ * while the block was open; unchanged balances are shared with earlier blocks.
  *
- * Once a block has 10 transactions, it is committed to the blockchain
- * via the Ledger's processTransaction() method. At this point, the block's
+ * Once a block is full (10 transactions, unless the Ledger was created with another
+ * block size), or has been open longer than the Ledger's maximum block latency,
+ * it is committed to the blockchain via the Ledger's processTransaction() method. At this point, the block's
  * account balance map becomes publicly accessible and accurately
  * represents proven account balances.
  *
@@ -21,9 +24,18 @@ public class Block {
     private int blockNumber;
     private String previousHash;
     private String hash;
+    private String merkleRoot;
+    private String stateCommitment;
+    private long totalSupply;
+    private String stateRoot;
+    private byte[][] merkleLevels;
     private HashMap<String, Account> accountBalanceMap;
     private ArrayList<Transaction> transactionList;
     private Block previousBlock;
+    // the committed accounts this block's account changes replace, and the resulting change
+    // to the state root; held only while the block is being sealed
+    private HashMap<String, Account> replacedAccounts;
+    private StateRoot stateChange;
 
     /**
      * Class constructor used to create genesis block
@@ -62,8 +74,9 @@ public class Block {
     @Override
     public String toString() {
         String blockInfo;
-        if (previousBlock != null){
-            blockInfo = "\nPrevious Block Number: " + previousBlock.getBlockNumber();
+        if (blockNumber > 1){
+            // the previous block may have been evicted from memory, but always precedes this block
+            blockInfo = "\nPrevious Block Number: " + (blockNumber - 1);
         }else{
             blockInfo = "\nPrevious Block: is null";
         }
@@ -79,7 +92,37 @@ public class Block {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(blockNumber, previousHash, accountBalanceMap, transactionList, previousBlock);
+        return Objects.hash(blockNumber, previousHash, hash);
+    }
+
+    /**
+     * Returns the canonical serialization of this block's header.
+     * The header covers the block number, previous hash, merkle root, state commitment,
+     * total supply and state root, and is the only input to the block hash.
+     *
+     * @return {@link String}
+     * @see String
+     */
+    public String getHeader() {
+        return header(blockNumber, previousHash, merkleRoot, stateCommitment, totalSupply, stateRoot);
+    }
+
+    /**
+     * Returns the canonical serialization of a block header with the given fields.
+     *
+     * @param blockNumber blockNumber
+     * @param previousHash previousHash
+     * @param merkleRoot merkleRoot
+     * @param stateCommitment stateCommitment
+     * @param totalSupply totalSupply
+     * @param stateRoot stateRoot
+     * @return {@link String}
+     * @see String
+     */
+    public static String header(int blockNumber, String previousHash, String merkleRoot, String stateCommitment,
+                                long totalSupply, String stateRoot) {
+        return blockNumber + "|" + previousHash + "|" + merkleRoot + "|" + stateCommitment + "|" + totalSupply
+                + "|" + stateRoot;
     }
 
     /**
@@ -145,7 +188,156 @@ public class Block {
 
 
     /**
-     * get account balance map
+     * get merkle root
+     *
+     * @return {@link String}
+     * @see String
+     */
+    public String getMerkleRoot() {
+        return this.merkleRoot;
+    }
+
+
+    /**
+     * set merkle root
+     *
+     * @param merkleRoot merkleRoot
+     */
+    public void setMerkleRoot(String merkleRoot) {
+        this.merkleRoot = merkleRoot;
+    }
+
+
+    /**
+     * get merkle levels, retained when the block is committed so inclusion proofs
+     * can be created without rehashing the block's transactions
+     *
+     * @return {@link byte[][]}
+     * @see MerkleTree#buildLevels(java.util.List)
+     */
+    public byte[][] getMerkleLevels() {
+        return this.merkleLevels;
+    }
+
+
+    /**
+     * set merkle levels
+     *
+     * @param merkleLevels merkleLevels
+     */
+    public void setMerkleLevels(byte[][] merkleLevels) {
+        this.merkleLevels = merkleLevels;
+    }
+
+
+    /**
+     * get state commitment
+     *
+     * @return {@link String}
+     * @see String
+     */
+    public String getStateCommitment() {
+        return this.stateCommitment;
+    }
+
+
+    /**
+     * set state commitment
+     *
+     * @param stateCommitment stateCommitment
+     */
+    public void setStateCommitment(String stateCommitment) {
+        this.stateCommitment = stateCommitment;
+    }
+
+
+    /**
+     * get total supply
+     *
+     * @return {@link long} total of all account balances once this block is committed
+     */
+    public long getTotalSupply() {
+        return this.totalSupply;
+    }
+
+
+    /**
+     * set total supply
+     *
+     * @param totalSupply totalSupply
+     */
+    public void setTotalSupply(long totalSupply) {
+        this.totalSupply = totalSupply;
+    }
+
+
+    /**
+     * get state root, committing to all account balances once this block is committed
+     *
+     * @return {@link String}
+     * @see StateRoot
+     */
+    public String getStateRoot() {
+        return this.stateRoot;
+    }
+
+
+    /**
+     * set state root
+     *
+     * @param stateRoot stateRoot
+     */
+    public void setStateRoot(String stateRoot) {
+        this.stateRoot = stateRoot;
+    }
+
+
+    /**
+     * get replaced accounts, the committed accounts changed by this block as they stood
+     * before it, held from when the block is closed until it is sealed
+     *
+     * @return {@link HashMap}
+     * @see Account
+     */
+    HashMap<String, Account> getReplacedAccounts() {
+        return this.replacedAccounts;
+    }
+
+
+    /**
+     * set replaced accounts
+     *
+     * @param replacedAccounts replacedAccounts
+     */
+    void setReplacedAccounts(HashMap<String, Account> replacedAccounts) {
+        this.replacedAccounts = replacedAccounts;
+    }
+
+
+    /**
+     * get state change, the change this block makes to the state root,
+     * held from when the block is hashed until it is sealed
+     *
+     * @return {@link StateRoot}
+     * @see StateRoot
+     */
+    StateRoot getStateChange() {
+        return this.stateChange;
+    }
+
+
+    /**
+     * set state change
+     *
+     * @param stateChange stateChange
+     */
+    void setStateChange(StateRoot stateChange) {
+        this.stateChange = stateChange;
+    }
+
+
+    /**
+     * get account balance map, containing only the accounts created or changed in this block
      *
      * @return {@link HashMap}
      * @see HashMap
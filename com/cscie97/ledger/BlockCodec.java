@@ -0,0 +1,266 @@
+package com.cscie97.ledger;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Encodes committed blocks into a compact binary format and decodes them again.
+ * <p>
+ * A block record holds the block header, its transactions and its account changes:
+ * <pre>
+ *   int    block number
+ *   string previous hash, hash, merkle root, state commitment
+ *   long   total supply
+ *   string state root
+ *   int    transaction count
+ *   int[]  offset of each transaction, from the start of the record
+ *   transactions: int id, long amount, long fee, string note, string payer, string receiver
+ *   int    account count
+ *   accounts: string address, long balance
+ * </pre>
+ * Strings are written as an int byte length (-1 for null) followed by UTF-8 bytes.
+ * The offset table lets a single transaction be decoded without reading the rest of the block.
+ *
+ * @see BlockStore
+ * @see Block
+ * @author austinhigh
+ */
+public final class BlockCodec {
+
+    private BlockCodec() {
+    }
+
+    /**
+     * Returns an upper bound on the encoded size of the given block.
+     *
+     * @param block block
+     * @return {@link int}
+     */
+    public static int maxEncodedSize(Block block) {
+        int size = 4 + maxSize(block.getPreviousHash()) + maxSize(block.getHash())
+                + maxSize(block.getMerkleRoot()) + maxSize(block.getStateCommitment()) + 8
+                + maxSize(block.getStateRoot()) + 4 + 4;
+        for (Transaction tx : block.getTransactionList()) {
+            size += 4 + 20 + maxSize(tx.getNote()) + maxSize(tx.getPayer()) + maxSize(tx.getReceiver());
+        }
+        for (Account acct : block.getAccountBalanceMap().values()) {
+            size += maxSize(acct.getAddress()) + 8;
+        }
+        return size;
+    }
+
+    /**
+     * Encodes a block into the buffer at its current position, advancing the position.
+     * The buffer must have at least {@link #maxEncodedSize(Block)} bytes remaining.
+     *
+     * @param block block
+     * @param buffer buffer
+     */
+    public static void encode(Block block, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(block.getBlockNumber());
+        putString(buffer, block.getPreviousHash());
+        putString(buffer, block.getHash());
+        putString(buffer, block.getMerkleRoot());
+        putString(buffer, block.getStateCommitment());
+        buffer.putLong(block.getTotalSupply());
+        putString(buffer, block.getStateRoot());
+
+        ArrayList<Transaction> transactions = block.getTransactionList();
+        buffer.putInt(transactions.size());
+        // reserve the offset table, filled in as each transaction is written
+        int offsetTable = buffer.position();
+        buffer.position(offsetTable + 4 * transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            buffer.putInt(offsetTable + 4 * i, buffer.position() - start);
+            Transaction tx = transactions.get(i);
+            buffer.putInt(tx.getTransactionId());
+            buffer.putLong(tx.getAmount());
+            buffer.putLong(tx.getFee());
+            putString(buffer, tx.getNote());
+            putString(buffer, tx.getPayer());
+            putString(buffer, tx.getReceiver());
+        }
+
+        buffer.putInt(block.getAccountBalanceMap().size());
+        for (Account acct : block.getAccountBalanceMap().values()) {
+            putString(buffer, acct.getAddress());
+            buffer.putLong(acct.getBalance());
+        }
+    }
+
+    /**
+     * Decodes a block from the record starting at the buffer's current position, advancing the position.
+     * The previous block reference and merkle levels are not part of the record and are left unset.
+     *
+     * @param buffer buffer
+     * @return {@link Block}
+     * @see Block
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    public static Block decode(ByteBuffer buffer) {
+        try {
+            int blockNumber = buffer.getInt();
+            Block block = new Block(blockNumber, getString(buffer), null);
+            block.setHash(getString(buffer));
+            block.setMerkleRoot(getString(buffer));
+            block.setStateCommitment(getString(buffer));
+            block.setTotalSupply(buffer.getLong());
+            block.setStateRoot(getString(buffer));
+
+            int txCount = checkCount(buffer.getInt(), buffer);
+            // transactions follow the offset table in order, so the table can be skipped
+            buffer.position(buffer.position() + 4 * txCount);
+            ArrayList<Transaction> transactions = new ArrayList<Transaction>(txCount);
+            for (int i = 0; i < txCount; i++) {
+                transactions.add(getTransaction(buffer));
+            }
+            block.setTransactionList(transactions);
+
+            int acctCount = checkCount(buffer.getInt(), buffer);
+            HashMap<String, Account> accounts = new HashMap<String, Account>();
+            for (int i = 0; i < acctCount; i++) {
+                Account acct = new Account(getString(buffer));
+                acct.setBalance(buffer.getLong());
+                accounts.put(acct.getAddress(), acct);
+            }
+            block.setAccountBalanceMap(accounts);
+            return block;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated block record", e);
+        }
+    }
+
+    /**
+     * Decodes a single transaction from a block record without decoding the rest of the block.
+     *
+     * @param buffer buffer holding the record
+     * @param recordStart absolute position of the start of the record
+     * @param slot index of the transaction within the block
+     * @return {@link Transaction}
+     * @see Transaction
+     */
+    public static Transaction decodeTransaction(ByteBuffer buffer, int recordStart, int slot) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(recordStart + 4);
+        // skip the four header strings, the total supply and the state root
+        for (int i = 0; i < 4; i++) {
+            skipString(view);
+        }
+        view.position(view.position() + 8);
+        skipString(view);
+        int txCount = view.getInt();
+        if (slot < 0 || slot >= txCount) {
+            throw new IllegalArgumentException("transaction slot out of range");
+        }
+        int offset = view.getInt(view.position() + 4 * slot);
+        view.position(recordStart + offset);
+        return getTransaction(view);
+    }
+
+    /**
+     * Advances the buffer's position past a string.
+     *
+     * @param buffer buffer
+     */
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + Math.max(length, 0));
+    }
+
+    /**
+     * Reads a transaction at the buffer's position.
+     *
+     * @param buffer buffer
+     * @return {@link Transaction}
+     */
+    private static Transaction getTransaction(ByteBuffer buffer) {
+        int id = buffer.getInt();
+        long amount = buffer.getLong();
+        long fee = buffer.getLong();
+        return new Transaction(id, amount, fee, getString(buffer), getString(buffer), getString(buffer));
+    }
+
+    /**
+     * Rejects element counts that could not fit in the rest of the buffer.
+     *
+     * @param count count
+     * @param buffer buffer
+     * @return {@link int}
+     */
+    private static int checkCount(int count, ByteBuffer buffer) {
+        if (count < 0 || count > buffer.remaining() / 4) {
+            throw new IllegalArgumentException("invalid element count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Returns an upper bound on the encoded size of a string.
+     * Shared with {@link TransactionCodec}.
+     *
+     * @param value value
+     * @return {@link int}
+     */
+    static int maxSize(String value) {
+        return 4 + (value == null ? 0 : value.length() * 3);
+    }
+
+    /**
+     * Writes a length prefixed UTF-8 string.
+     * Shared with {@link TransactionCodec}.
+     *
+     * @param buffer buffer
+     * @param value value
+     */
+    static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a length prefixed UTF-8 string.
+     *
+     * @param buffer buffer
+     * @return {@link String}
+     */
+    private static String getString(ByteBuffer buffer) {
+        return getString(buffer, buffer.limit());
+    }
+
+    /**
+     * Reads a length prefixed UTF-8 string that must end within its record.
+     * Shared with {@link TransactionCodec}.
+     *
+     * @param buffer buffer
+     * @param end position of the end of the record
+     * @return {@link String}
+     */
+    static String getString(ByteBuffer buffer, int end) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > end - buffer.position()) {
+            throw new IllegalArgumentException("invalid string length " + length);
+        }
+        if (buffer.hasArray()) {
+            // decode straight from the backing array
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
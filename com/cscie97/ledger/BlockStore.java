@@ -0,0 +1,555 @@
+package com.cscie97.ledger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-disk store for committed blocks.
+ * <p>
+ * Blocks are encoded with {@link BlockCodec} and appended to a series of segment files in the
+ * store directory, each record framed by its length and a CRC32 checksum. Records are collected
+ * in a write buffer and written sequentially with a single channel write per group; the group is
+ * then forced to disk. A group is written once it holds a set number of blocks or when a time
+ * limit has passed since its first block was appended, so persistence does not cost an fsync per
+ * block. The time limit is enforced by a timer as well, so the last group on a quiet ledger is
+ * written without waiting for another block. Blocks in a group that has not yet been written are
+ * lost if the process stops.
+ * <p>
+ * On startup, {@link #replay(Consumer)} reads the segments back in order. A record that is cut
+ * short or fails its checksum marks a torn write at the tail of the log; the segment is truncated
+ * at that record and any later segments are deleted.
+ * <p>
+ * The store keeps the segment and offset of every block it holds, so once a block's group has
+ * been written the block can be read back through a {@link MappedBlockReader} instead of being
+ * kept on the heap.
+ * <p>
+ * Writes are serialized by the store's monitor. Reads of written blocks need no lock and may run
+ * on other threads while blocks are appended, since a block's location is recorded before the
+ * block is published as written.
+ * <p>
+ * The ledger name, description, seed, block settings, initial supply and number of resident blocks
+ * are kept in a properties file alongside the segments so the ledger can be recreated before its
+ * blocks are replayed.
+ *
+ * @see BlockCodec
+ * @see Ledger
+ * @author austinhigh
+ */
+public class BlockStore {
+
+    /**
+     * Default number of blocks written and forced to disk together.
+     */
+    public static final int DEFAULT_GROUP_SIZE = 64;
+
+    /**
+     * Default maximum time in milliseconds a block waits in the write buffer.
+     */
+    public static final long DEFAULT_GROUP_INTERVAL = 50;
+
+    /**
+     * Default segment size in bytes after which a new segment file is started.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final String META_FILE = "ledger.properties";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    static final int FRAME_HEADER = 8;
+
+    // writes groups whose time limit has passed, for every store
+    private static final ScheduledExecutorService GROUP_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "block-store-group-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Path directory;
+    private FileChannel segment;
+    private int segmentNumber;
+    private long segmentSize;
+    private long maxSegmentSize;
+    private ByteBuffer writeBuffer;
+    private int pendingBlocks;
+    private long pendingSince;
+    private int groupSize;
+    private long groupInterval;
+    private CRC32 crc;
+    private long[] locations;
+    private int lastAppendedBlock;
+    private volatile int lastWrittenBlock;
+    private MappedBlockReader reader;
+    // failure of a group written by the timer, reported by the next append or flush
+    private IOException timerFailure;
+
+    /**
+     * Class Constructor, opens the store in the given directory.
+     * Use {@link #create(Path, Ledger)} or {@link #open(Path)}.
+     *
+     * @param directory store directory
+     */
+    private BlockStore(Path directory) {
+        this.directory = directory;
+        this.maxSegmentSize = DEFAULT_SEGMENT_SIZE;
+        this.groupSize = DEFAULT_GROUP_SIZE;
+        this.groupInterval = DEFAULT_GROUP_INTERVAL;
+        this.writeBuffer = ByteBuffer.allocate(1024 * 1024);
+        this.crc = new CRC32();
+        this.locations = new long[1024];
+        this.reader = new MappedBlockReader();
+    }
+
+    /**
+     * Creates a new, empty store for the given ledger.
+     *
+     * @param directory store directory, created if missing
+     * @param ledger ledger whose settings are recorded
+     * @return {@link BlockStore}
+     * @throws IOException if the directory already holds a store or cannot be written
+     */
+    public static BlockStore create(Path directory, Ledger ledger) throws IOException {
+        Files.createDirectories(directory);
+        Path meta = directory.resolve(META_FILE);
+        if (Files.exists(meta)) {
+            throw new IOException("block store already exists in " + directory);
+        }
+        BlockStore store = new BlockStore(directory);
+        store.writeSettings(ledger);
+        store.openSegment(0);
+        return store;
+    }
+
+    /**
+     * Records the ledger's settings, replacing the settings recorded before.
+     *
+     * @param ledger ledger whose settings are recorded
+     * @throws IOException if the settings cannot be written
+     */
+    public void writeSettings(Ledger ledger) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("name", ledger.getName());
+        properties.setProperty("description", ledger.getDescription());
+        properties.setProperty("seed", ledger.getSeed());
+        properties.setProperty("blockSize", Integer.toString(ledger.getBlockSize()));
+        properties.setProperty("maxBlockLatency", Long.toString(ledger.getMaxBlockLatency()));
+        properties.setProperty("initialSupply", Long.toString(ledger.getInitialSupply()));
+        properties.setProperty("residentBlocks", Integer.toString(ledger.getResidentBlocks()));
+        // write a new file and move it into place, so the settings are never left half written
+        Path written = directory.resolve(META_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(written)) {
+            properties.store(out, "ledger settings");
+        }
+        Files.move(written, directory.resolve(META_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens an existing store. Call {@link #replay(Consumer)} before appending blocks.
+     *
+     * @param directory store directory
+     * @return {@link BlockStore}
+     * @throws IOException if the directory does not hold a store
+     */
+    public static BlockStore open(Path directory) throws IOException {
+        if (!Files.exists(directory.resolve(META_FILE))) {
+            throw new IOException("no block store in " + directory);
+        }
+        return new BlockStore(directory);
+    }
+
+    /**
+     * Reads the ledger settings recorded when the store was created.
+     *
+     * @return {@link Properties}
+     * @throws IOException if the settings cannot be read
+     */
+    public Properties readSettings() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(directory.resolve(META_FILE))) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    /**
+     * Reads every block in the store in order, passing each to the consumer.
+     * Truncates a torn record at the tail of the last segment, then positions the store
+     * to append after the last complete record. A bad record in any earlier segment
+     * is corruption rather than an interrupted write, and fails the replay. Each block counts as written once
+     * its record has been read, so the consumer may drop earlier blocks from the heap
+     * and read them back from the store.
+     *
+     * @param consumer receives each decoded block
+     * @throws IOException if a segment cannot be read or truncated, or an earlier segment is corrupt
+     */
+    public void replay(Consumer<Block> consumer) throws IOException {
+        List<Path> segments = listSegments();
+        int lastSegment = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            lastSegment = segmentNumber(path);
+            long validLength = replaySegment(path, lastSegment, consumer);
+            if (validLength < Files.size(path)) {
+                if (i < segments.size() - 1) {
+                    // only the last segment can hold an interrupted write
+                    throw new IOException("block store segment " + path.getFileName()
+                            + " is corrupt at offset " + validLength);
+                }
+                // torn tail: drop the partial record
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(validLength);
+                    channel.force(true);
+                }
+                reader.clear();
+            }
+        }
+        lastWrittenBlock = lastAppendedBlock;
+        openSegment(lastSegment);
+    }
+
+    /**
+     * Adds a committed block to the write buffer, writing the buffered group
+     * if it is full or its time limit has passed.
+     *
+     * @param block committed block
+     * @throws IOException if the group cannot be written
+     */
+    public synchronized void append(Block block) throws IOException {
+        reportTimerFailure();
+        int maxSize = FRAME_HEADER + BlockCodec.maxEncodedSize(block);
+        if (writeBuffer.remaining() < maxSize) {
+            flush();
+            if (writeBuffer.capacity() < maxSize) {
+                writeBuffer = ByteBuffer.allocate(maxSize);
+            }
+        }
+        if (segmentSize + writeBuffer.position() + maxSize > maxSegmentSize && segmentSize > 0) {
+            // start a new segment once the current one is full
+            flush();
+            segment.close();
+            openSegment(segmentNumber + 1);
+        }
+        // frame the record with its length and checksum
+        int frameStart = writeBuffer.position();
+        recordLocation(block.getBlockNumber(), segmentNumber, segmentSize + frameStart);
+        writeBuffer.position(frameStart + FRAME_HEADER);
+        BlockCodec.encode(block, writeBuffer);
+        int length = writeBuffer.position() - frameStart - FRAME_HEADER;
+        crc.reset();
+        crc.update(writeBuffer.array(), frameStart + FRAME_HEADER, length);
+        writeBuffer.putInt(frameStart, length);
+        writeBuffer.putInt(frameStart + 4, (int) crc.getValue());
+
+        if (pendingBlocks++ == 0) {
+            pendingSince = System.nanoTime();
+            if (groupInterval > 0) {
+                // write the group once its time limit passes, even if no other block is appended
+                GROUP_TIMER.schedule(this::flushExpired, groupInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (pendingBlocks >= groupSize || System.nanoTime() - pendingSince >= groupInterval * 1_000_000L) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered group if its time limit has passed. Called by the group timer.
+     */
+    private synchronized void flushExpired() {
+        if (segment == null || pendingBlocks == 0
+                || System.nanoTime() - pendingSince < groupInterval * 1_000_000L) {
+            // the group has been written, or a later group has started its own timer
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            timerFailure = e;
+        }
+    }
+
+    /**
+     * Throws the failure of a group written by the timer, once.
+     *
+     * @throws IOException if the timer could not write a group
+     */
+    private void reportTimerFailure() throws IOException {
+        IOException failure = timerFailure;
+        if (failure != null) {
+            timerFailure = null;
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes the buffered group of blocks and forces it to disk.
+     *
+     * @throws IOException if the group cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        reportTimerFailure();
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            segmentSize += segment.write(writeBuffer);
+        }
+        writeBuffer.clear();
+        segment.force(false);
+        pendingBlocks = 0;
+        lastWrittenBlock = lastAppendedBlock;
+    }
+
+    /**
+     * Reads a block that has been written to disk, decoding it from the mapped segment.
+     *
+     * @param blockNumber block number
+     * @return {@link Block}
+     * @see Block
+     * @throws IOException if the block has not been written or cannot be read
+     */
+    public Block readBlock(int blockNumber) throws IOException {
+        long location = location(blockNumber);
+        return reader.readBlock(segmentPath((int) (location >>> 32)), (int) location);
+    }
+
+    /**
+     * Reads one transaction of a block that has been written to disk,
+     * decoding only that transaction from the mapped segment.
+     *
+     * @param blockNumber block number
+     * @param slot index of the transaction within the block
+     * @return {@link Transaction}
+     * @see Transaction
+     * @throws IOException if the block has not been written or cannot be read
+     */
+    public Transaction readTransaction(int blockNumber, int slot) throws IOException {
+        long location = location(blockNumber);
+        return reader.readTransaction(segmentPath((int) (location >>> 32)), (int) location, slot);
+    }
+
+    /**
+     * Returns the number of the last block whose group has been written to disk,
+     * or 0 if none has. Blocks up to this number can be read back from the store.
+     *
+     * @return {@link int}
+     */
+    public int getLastWrittenBlock() {
+        return this.lastWrittenBlock;
+    }
+
+    /**
+     * Returns the packed segment number and offset of a written block.
+     *
+     * @param blockNumber block number
+     * @return {@link long}
+     * @throws IOException if the block has not been written
+     */
+    private long location(int blockNumber) throws IOException {
+        if (blockNumber < 1 || blockNumber > lastWrittenBlock) {
+            throw new IOException("block " + blockNumber + " has not been written");
+        }
+        return locations[blockNumber];
+    }
+
+    /**
+     * Records the segment number and offset of a block's record.
+     *
+     * @param blockNumber block number
+     * @param segment segment number
+     * @param offset offset of the record's frame in the segment
+     */
+    private void recordLocation(int blockNumber, int segment, long offset) {
+        if (blockNumber >= locations.length) {
+            locations = Arrays.copyOf(locations, Math.max(blockNumber + 1, locations.length * 2));
+        }
+        locations[blockNumber] = ((long) segment << 32) | offset;
+        lastAppendedBlock = blockNumber;
+    }
+
+    /**
+     * Writes any buffered blocks and closes the current segment.
+     *
+     * @throws IOException if the buffered blocks cannot be written
+     */
+    public synchronized void close() throws IOException {
+        if (segment != null) {
+            flush();
+            segment.close();
+            segment = null;
+        }
+    }
+
+    /**
+     * Sets the number of blocks written together and the maximum time in milliseconds
+     * a block may wait before its group is written.
+     *
+     * @param groupSize group size
+     * @param groupInterval group interval
+     */
+    public void setGroupCommit(int groupSize, long groupInterval) {
+        this.groupSize = Math.max(groupSize, 1);
+        this.groupInterval = groupInterval;
+    }
+
+    /**
+     * set max segment size
+     *
+     * @param maxSegmentSize maxSegmentSize
+     */
+    public void setMaxSegmentSize(long maxSegmentSize) {
+        // offsets within a segment are stored as ints
+        this.maxSegmentSize = Math.min(maxSegmentSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * get directory
+     *
+     * @return {@link Path}
+     * @see Path
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Reads the complete records in one segment, passing each block to the consumer.
+     *
+     * @param path segment path
+     * @param number segment number
+     * @param consumer consumer
+     * @return {@link long} length of the segment up to the end of the last complete record
+     * @throws IOException if the segment cannot be read
+     */
+    private long replaySegment(Path path, int number, Consumer<Block> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+            ByteBuffer record = ByteBuffer.allocate(64 * 1024);
+            while (position + FRAME_HEADER <= size) {
+                header.clear();
+                readFully(channel, header, position);
+                int length = header.getInt(0);
+                int checksum = header.getInt(4);
+                if (length < 0 || position + FRAME_HEADER + length > size) {
+                    // incomplete record
+                    return position;
+                }
+                if (record.capacity() < length) {
+                    record = ByteBuffer.allocate(length);
+                }
+                record.clear().limit(length);
+                readFully(channel, record, position + FRAME_HEADER);
+                crc.reset();
+                crc.update(record.array(), 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    // corrupt record
+                    return position;
+                }
+                record.flip();
+                Block block;
+                try {
+                    block = BlockCodec.decode(record);
+                } catch (IllegalArgumentException e) {
+                    return position;
+                }
+                recordLocation(block.getBlockNumber(), number, position);
+                lastWrittenBlock = block.getBlockNumber();
+                consumer.accept(block);
+                position += FRAME_HEADER + length;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Fills the buffer from the channel starting at the given position.
+     *
+     * @param channel channel
+     * @param buffer buffer
+     * @param position position
+     * @throws IOException if the end of the channel is reached first
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of segment");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Opens the given segment for appending, creating it if missing.
+     *
+     * @param number segment number
+     * @throws IOException if the segment cannot be opened
+     */
+    private void openSegment(int number) throws IOException {
+        segmentNumber = number;
+        segment = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = segment.size();
+    }
+
+    /**
+     * Returns the segment files in the store, in order.
+     *
+     * @return {@link List}
+     * @throws IOException if the directory cannot be read
+     */
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        // zero padded segment numbers sort in order
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Returns the path of the given segment.
+     *
+     * @param number segment number
+     * @return {@link Path}
+     */
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Returns the number of the given segment.
+     *
+     * @param path segment path
+     * @return {@link int}
+     */
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -1,11 +1,17 @@
 package com.cscie97.ledger;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  *  Utility class for feeding the Ledger a set of operations using command syntax.
@@ -14,14 +20,53 @@ import java.util.regex.Pattern;
  */
 public class CommandProcessor {
 
+    // commands that read or write files, or replace the current ledger
+    private static final Set<String> FILE_COMMANDS = new HashSet<String>(Arrays.asList(
+            "create-ledger", "open-ledger", "process-transactions", "load-transactions"));
+
     private Ledger currentLedger;
     private String accessType;
+    // receives the output of every command
+    private final PrintWriter out;
+    // false if the file commands are rejected
+    private final boolean fileCommands;
+
+    /**
+     * Class Constructor, printing command output to standard output as each line is printed.
+     */
+    public CommandProcessor() {
+        this(new PrintWriter(System.out, true));
+    }
+
+    /**
+     * Class Constructor.
+     *
+     * @param out writer receiving command output, flushed when a script has been processed
+     */
+    public CommandProcessor(PrintWriter out) {
+        this.out = out;
+        this.fileCommands = true;
+    }
+
+    /**
+     * Class Constructor, for a session on a ledger shared with other sessions. Unless file commands
+     * are allowed, the commands that read or write files or replace the current ledger
+     * (create-ledger, open-ledger, process-transactions and load-transactions) are rejected.
+     *
+     * @param out writer receiving command output
+     * @param ledger current ledger
+     * @param fileCommands true to allow the file commands
+     */
+    public CommandProcessor(PrintWriter out, Ledger ledger, boolean fileCommands) {
+        this.out = out;
+        this.currentLedger = ledger;
+        this.fileCommands = fileCommands;
+    }
 
     /**
      * Compares CLI input to available methods, runs appropriate method.
      * This method parses the input from processCommandFile.
-     * It splits the input on spaces using a regular expression,
-     * while ignoring spaces between quotations.
+     * It splits the input on spaces, while ignoring spaces between quotations.
      * "Test Comment" is preserved as a single String object.
      * <p>
      * This method will run valid CLI arguments, and throw errors providing
@@ -31,22 +76,57 @@ public class CommandProcessor {
      * @throws CommandProcessorException com.cscie97.ledger. command processor exception
      */
     public void processCommand(String command) throws CommandProcessorException {
+        execute(parse(command, 0));
+    }
+
+    /**
+     * Splits a line of a script into fields, and builds the Transaction of a well formed
+     * process-transaction line. Parsing uses no state of the processor, so lines may be
+     * parsed on any thread, ahead of their execution.
+     *
+     * @param line line
+     * @param lineNumber number of the line in its script
+     * @return {@link ParsedCommand}
+     * @see ParsedCommand
+     */
+    public static ParsedCommand parse(String line, int lineNumber) {
+        // separate input on whitespace, unless whitespace within quotations
+        ArrayList<String> fields = tokenize(line);
+        Transaction transaction = null;
+        if (fields.size() == 12 && fields.get(0).equals("process-transaction")) {
+            try {
+                transaction = parseTransaction(fields, 1);
+            } catch (NumberFormatException e) {
+                // left for execution, which reports the malformed line in order
+            }
+        }
+        return new ParsedCommand(line, lineNumber, fields, transaction);
+    }
+
+    /**
+     * Runs a parsed command, as {@link #processCommand(String)} does.
+     *
+     * @param parsed parsed command
+     * @throws CommandProcessorException com.cscie97.ledger. command processor exception
+     */
+    public void execute(ParsedCommand parsed) throws CommandProcessorException {
+        String command = parsed.getLine();
         try{
-            // separate input on whitespace, unless whitespace within quotations
-            ArrayList<String> commands = new ArrayList<String>();
-            Pattern regex = Pattern.compile("[^\\s\"']+|\"[^\"]*\"|'[^']*'");
-            // run regular expression comparison on input
-            Matcher regexMatcher = regex.matcher(command);
-            // add each new string to arraylist
-            while (regexMatcher.find()) {
-                commands.add(regexMatcher.group());
+            ArrayList<String> commands = parsed.getFields();
+            if (commands.isEmpty()) {
+                // skip blank lines
+                return;
             }
             String firstArg = commands.get(0);
+            if (!fileCommands && FILE_COMMANDS.contains(firstArg)) {
+                // throw exception if the session may not use files or replace its ledger
+                throw new CommandProcessorException(firstArg + " is not available in this session");
+            }
             switch(firstArg) {
                 // compare first word in line to determine method to call
                 case "#":
                     // print comments
-                    System.out.println(command);
+                    out.println(command);
                     break;
                 case "access-type":
                     String access = commands.get(1);
@@ -60,15 +140,67 @@ public class CommandProcessor {
                     }
                     break;
                 case "create-ledger":
-                    if (commands.size() != 6) {
+                    if (commands.size() < 6 || commands.size() % 2 != 0
+                            || !commands.get(2).equals("description") || !commands.get(4).equals("seed")) {
                         // throw exception if incorrect number of command line arguments
                         throw new CommandProcessorException("command should follow form:" +
-                                "\ncreate-ledger <name> description <description> seed <seed>");
+                                "\ncreate-ledger <name> description <description> seed <seed>" +
+                                " [block-size <transactions>] [max-latency <milliseconds>] [store <directory>]" +
+                                " [initial-supply <amount>]");
                     }
                     if (this.accessType.equals("admin")) {
-                        // if admin access is set, instantiate current ledger class variable
-                        currentLedger = new Ledger(commands.get(1), commands.get(3), commands.get(5));
-                        try{currentLedger.fundLedger();
+                        // if admin access is set, read optional block settings
+                        int blockSize = Ledger.DEFAULT_BLOCK_SIZE;
+                        long maxLatency = 0;
+                        long initialSupply = Ledger.DEFAULT_INITIAL_SUPPLY;
+                        String store = null;
+                        for (int i = 6; i < commands.size(); i += 2) {
+                            switch (commands.get(i)) {
+                                case "block-size":
+                                    blockSize = Integer.parseInt(commands.get(i + 1));
+                                    break;
+                                case "max-latency":
+                                    maxLatency = Long.parseLong(commands.get(i + 1));
+                                    break;
+                                case "store":
+                                    store = commands.get(i + 1);
+                                    break;
+                                case "initial-supply":
+                                    initialSupply = Long.parseLong(commands.get(i + 1));
+                                    break;
+                                default:
+                                    throw new CommandProcessorException("invalid create-ledger option " + commands.get(i));
+                            }
+                        }
+                        if (blockSize < 1 || maxLatency < 0 || initialSupply < 0) {
+                            throw new CommandProcessorException("block-size must be at least 1, and max-latency" +
+                                    " and initial-supply must not be negative");
+                        }
+                        // instantiate current ledger class variable
+                        currentLedger = new Ledger(commands.get(1), commands.get(3), commands.get(5), blockSize);
+                        currentLedger.setMaxBlockLatency(maxLatency);
+                        currentLedger.setInitialSupply(initialSupply);
+                        try{
+                            currentLedger.fundLedger();
+                            if (store != null) {
+                                // persist committed blocks to the given directory
+                                currentLedger.createBlockStore(Paths.get(store));
+                            }
+                        } catch(LedgerException e){ throw new CommandProcessorException(e);}
+                    }else {
+                        // throw exception if admin access not set
+                        throw new CommandProcessorException("admin access required");
+                    }
+                    break;
+                case "open-ledger":
+                    if (commands.size() != 2) {
+                        // throw exception if incorrect number of command line arguments
+                        throw new CommandProcessorException("command should follow form:" +
+                                "\nopen-ledger <directory>");
+                    }
+                    if (this.accessType.equals("admin")) {
+                        // recover the ledger from its block store
+                        try{currentLedger = Ledger.open(Paths.get(commands.get(1)));
                         } catch(LedgerException e){ throw new CommandProcessorException(e);}
                     }else {
                         // throw exception if admin access not set
@@ -81,8 +213,10 @@ public class CommandProcessor {
                     catch(LedgerException e){throw new CommandProcessorException(e);}
                     break;
                 case "get-account-balance":
-                    // print account balance for specified account
-                    try {System.out.println(currentLedger.getAccountBalance(commands.get(1)));}
+                    // print account balance for specified account, as of specified block if given
+                    try {out.println(commands.size() > 2
+                            ? currentLedger.getAccountBalance(commands.get(1), Integer.parseInt(commands.get(2)))
+                            : currentLedger.getAccountBalance(commands.get(1)));}
                     catch(LedgerException e){throw new CommandProcessorException(e);}
                     break;
                 case "process-transaction":
@@ -93,25 +227,41 @@ public class CommandProcessor {
                                     "\nprocess-transaction <transaction-id> amount <amount> fee <fee> " +
                                     "note <note> payer <account-address> receiver <account-address>");
                         };
-                        // instantiate new transaction
-                        Transaction tx = new Transaction(Integer.parseInt(commands.get(1)),
-                                Integer.parseInt(commands.get(3)),
-                                Integer.parseInt(commands.get(5)),
-                                commands.get(7),
-                                commands.get(9),
-                                commands.get(11));
+                        // instantiate new transaction, unless it was built when the line was parsed
+                        Transaction tx = parsed.getTransaction() != null
+                                ? parsed.getTransaction() : parseTransaction(commands, 1);
                         // process transaction
                         try {currentLedger.processTransaction(tx);}
                         catch(LedgerException e){throw new CommandProcessorException(e);}
                     break;
+                case "process-transactions":
+                    // process a batch file of transactions in one call
+                    if (commands.size() != 2) {
+                        // throw exception if incorrect number of arguments
+                        throw new CommandProcessorException("command should follow form:" +
+                                "\nprocess-transactions <file>");
+                    }
+                    processTransactionFile(commands.get(1));
+                    break;
+                case "load-transactions":
+                    // load a binary transaction file, printing each rejected transaction
+                    if (commands.size() != 2) {
+                        // throw exception if incorrect number of arguments
+                        throw new CommandProcessorException("command should follow form:" +
+                                "\nload-transactions <file>");
+                    }
+                    loadTransactionFile(commands.get(1));
+                    break;
                 case "get-account-balances":
-                    // get account balances for all accounts in current ledger
-                    try{ System.out.println(currentLedger.getAccountBalances());}
+                    // get account balances for all accounts in current ledger, as of specified block if given
+                    try{ out.println(commands.size() > 1
+                            ? currentLedger.getAccountBalances(Integer.parseInt(commands.get(1)))
+                            : currentLedger.getAccountBalances());}
                     catch(LedgerException e){throw new CommandProcessorException(e);}
                     break;
                 case "get-block":
                     // call toString method for specified block, displaying relevant block information
-                    try { System.out.println(currentLedger.getBlock(Integer.parseInt(commands.get(1))));}
+                    try { out.println(currentLedger.getBlock(Integer.parseInt(commands.get(1))));}
                     catch(LedgerException e){throw new CommandProcessorException(e);}
                     break;
                 case "set-block-hash":
@@ -122,16 +272,66 @@ public class CommandProcessor {
                     break;
                 case "get-transaction":
                     // call toString method for specified transaction, displaying relevant block information
-                    System.out.println(currentLedger.getTransaction(commands.get(1)));
+                    out.println(currentLedger.getTransaction(commands.get(1)));
+                    break;
+                case "get-account-transactions":
+                    // print a page of the committed transactions paid or received by specified account
+                    if (commands.size() < 2 || commands.size() > 4) {
+                        // throw exception if incorrect number of arguments
+                        throw new CommandProcessorException("command should follow form:" +
+                                "\nget-account-transactions <account-address> [from] [limit]");
+                    }
+                    int from = commands.size() > 2 ? Integer.parseInt(commands.get(2)) : 0;
+                    int limit = commands.size() > 3 ? Integer.parseInt(commands.get(3)) : Integer.MAX_VALUE;
+                    try {
+                        for (Transaction accountTx : currentLedger.getAccountTransactions(commands.get(1), from, limit)) {
+                            out.println(accountTx);
+                        }
+                    }
+                    catch(LedgerException e){throw new CommandProcessorException(e);}
+                    break;
+                case "get-transaction-proof":
+                    // print the merkle inclusion proof for specified transaction, and whether it verifies
+                    // against the merkle root of the block containing the transaction
+                    try {
+                        MerkleProof proof = currentLedger.getTransactionProof(commands.get(1));
+                        out.println(proof);
+                        out.println("Verified: " + proof.verify(currentLedger.getTransaction(commands.get(1)),
+                                currentLedger.getBlock(proof.getBlockNumber()).getMerkleRoot()));
+                    }
+                    catch(LedgerException e){throw new CommandProcessorException(e);}
                     break;
                 case "set-transaction-amount":
                     // set the amount of the specified transaction to new amount input via CLI
                     // only sets the amount for the deep copy returned by getTransaction() does not modify blockchain
-                    currentLedger.getTransaction(commands.get(1)).setAmount(Integer.parseInt(commands.get(2)));
+                    currentLedger.getTransaction(commands.get(1)).setAmount(Long.parseLong(commands.get(2)));
                     break;
                 case "validate":
-                    // validate the blockchain
-                    try{ currentLedger.validate();}
+                    List<String> options = commands.subList(1, commands.size());
+                    boolean all = options.contains("--all");
+                    boolean sinceCheckpoint = options.contains("--since-checkpoint");
+                    if (options.size() != (all ? 1 : 0) + (sinceCheckpoint ? 1 : 0)) {
+                        // throw exception if incorrect arguments
+                        throw new CommandProcessorException("command should follow form:" +
+                                "\nvalidate [--all] [--since-checkpoint]");
+                    }
+                    try {
+                        if (all) {
+                            // validate the blockchain, printing every failing check
+                            List<ValidationFailure> failures = sinceCheckpoint
+                                    ? currentLedger.validateSinceCheckpoint(new ValidationMonitor())
+                                    : currentLedger.validate(new ValidationMonitor());
+                            for (ValidationFailure failure : failures) {
+                                out.println(failure);
+                            }
+                        } else if (sinceCheckpoint) {
+                            // validate the blocks committed since the last successful validation
+                            currentLedger.validateSinceCheckpoint();
+                        } else {
+                            // validate the blockchain
+                            currentLedger.validate();
+                        }
+                    }
                     catch(LedgerException e){throw new CommandProcessorException(e);}
                     break;
                 default:
@@ -141,41 +341,273 @@ public class CommandProcessor {
         } catch (CommandProcessorException e){
             e.setCommand(command);
             throw new CommandProcessorException(e);
+        } catch (NumberFormatException e){
+            // report a malformed number like any other invalid command, so a script carries on
+            CommandProcessorException error = new CommandProcessorException("invalid number " + e.getMessage());
+            error.setCommand(command);
+            throw error;
         }
     }
 
     /**
-     * Scans input file line by line,
-     * running the processCommmand() method on each line.
-     * Also tracks the current line in the input file,
-     * and will set the line number when a CommandProcessorException is thrown.
+     * Reads a batch file of transactions and processes them with a single call to
+     * {@link Ledger#processTransactions(List)}. Each line holds one transaction in the form
+     * <p>
+     * [process-transaction] &lt;transaction-id&gt; amount &lt;amount&gt; fee &lt;fee&gt; note &lt;note&gt;
+     * payer &lt;account-address&gt; receiver &lt;account-address&gt;
+     * <p>
+     * Blank lines and lines starting with # are skipped. Malformed lines and rejected transactions
+     * are printed with their line number in the batch file; the rest of the batch is still processed.
+     * A malformed line is reported by its number only, so the text of a file that is not a batch
+     * file is never printed.
+     * The file is read from the given path, or from the test folder if no such file exists.
      *
      * @param file file
+     * @throws CommandProcessorException com.cscie97.ledger. command processor exception
      */
-    public void processCommandFile(String file){
+    private void processTransactionFile(String file) throws CommandProcessorException {
+        Path path = Paths.get(file);
+        if (!Files.exists(path)) {
+            path = Paths.get("com/cscie97/ledger/test", file);
+        }
+        ArrayList<Transaction> transactions = new ArrayList<Transaction>();
+        ArrayList<Integer> lineNumbers = new ArrayList<Integer>();
+        ArrayList<String> lines = new ArrayList<String>();
+        // errors are printed in line order once the batch has run
+        TreeMap<Integer, CommandProcessorException> errors = new TreeMap<Integer, CommandProcessorException>();
+        try (BufferedReader reader = ScriptRunner.open(path)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                ArrayList<String> fields = tokenize(line);
+                if (fields.isEmpty() || fields.get(0).startsWith("#")) {
+                    continue;
+                }
+                // the command name is optional in a batch file
+                int offset = fields.get(0).equals("process-transaction") ? 1 : 0;
+                try {
+                    if (fields.size() - offset != 11) {
+                        throw new CommandProcessorException("batch line should follow form:" +
+                                "\n[process-transaction] <transaction-id> amount <amount> fee <fee> " +
+                                "note <note> payer <account-address> receiver <account-address>");
+                    }
+                    transactions.add(parseTransaction(fields, offset));
+                    lineNumbers.add(lineNumber);
+                    lines.add(line);
+                } catch (CommandProcessorException | NumberFormatException e) {
+                    CommandProcessorException error = e instanceof CommandProcessorException
+                            ? (CommandProcessorException) e
+                            : new CommandProcessorException("invalid number in batch line");
+                    error.setCommand("process-transactions " + file);
+                    error.setLineNumber(lineNumber);
+                    errors.put(lineNumber, error);
+                }
+            }
+        } catch (IOException e) {
+            throw new CommandProcessorException("batch file could not be read: " + e.getMessage());
+        }
+        List<TransactionResult> results;
         try {
-            // get script file in test folder specified as parameter
-            File myObj = new File("com/cscie97/ledger/test/" + file);
-            Scanner myReader = new Scanner(myObj);
-            int i = 0;
-            while (myReader.hasNextLine()) {
-                // while reader has next line count lines and run process command
-                String data = myReader.nextLine();
+            results = currentLedger.processTransactions(transactions);
+        } catch (LedgerException e) {
+            throw new CommandProcessorException(e);
+        }
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isAccepted()) {
+                // record each rejected transaction with its line in the batch file
+                CommandProcessorException error = new CommandProcessorException(results.get(i).getException());
+                error.setCommand(lines.get(i));
+                error.setLineNumber(lineNumbers.get(i));
+                errors.put(lineNumbers.get(i), error);
+            }
+        }
+        for (CommandProcessorException error : errors.values()) {
+            out.println(error);
+        }
+    }
+
+    /**
+     * Loads a binary transaction file, as written by {@link TransactionFile#convert}, into the
+     * current ledger, and prints each rejected transaction. The file is read from the given path,
+     * or from the test folder if no such file exists.
+     *
+     * @param file file
+     * @throws CommandProcessorException com.cscie97.ledger. command processor exception
+     */
+    private void loadTransactionFile(String file) throws CommandProcessorException {
+        Path path = Paths.get(file);
+        if (!Files.exists(path)) {
+            path = Paths.get("com/cscie97/ledger/test", file);
+        }
+        try {
+            for (TransactionResult result : TransactionFile.load(path, currentLedger)) {
+                out.println(result);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new CommandProcessorException("transaction file could not be read: " + e.getMessage());
+        } catch (LedgerException e) {
+            throw new CommandProcessorException(e);
+        }
+    }
+
+    /**
+     * Creates a transaction from the fields of a process-transaction command, starting with the
+     * field holding the transaction id.
+     *
+     * @param fields command fields
+     * @param offset index of the transaction id field
+     * @return {@link Transaction}
+     * @see Transaction
+     */
+    private static Transaction parseTransaction(List<String> fields, int offset) {
+        return new Transaction(Integer.parseInt(fields.get(offset)),
+                Long.parseLong(fields.get(offset + 2)),
+                Long.parseLong(fields.get(offset + 4)),
+                fields.get(offset + 6),
+                fields.get(offset + 8),
+                fields.get(offset + 10));
+    }
+
+    /**
+     * Splits a line into fields on whitespace, keeping quoted text as a single field.
+     * <p>
+     * A field is a run of characters other than whitespace and quotes, or text between a pair of
+     * double or single quotes, quotes included. A quote without a closing quote is skipped.
+     * The line is scanned once, without a regular expression.
+     *
+     * @param line line
+     * @return {@link ArrayList}
+     * @see ArrayList
+     * @see String
+     */
+    static ArrayList<String> tokenize(String line) {
+        ArrayList<String> fields = new ArrayList<String>();
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (c == '"' || c == '\'') {
+                // quoted field, running to the matching quote
+                int close = line.indexOf(c, i + 1);
+                if (close >= 0) {
+                    fields.add(line.substring(i, close + 1));
+                    i = close + 1;
+                } else {
+                    i++;
+                }
+            } else if (isWhitespace(c)) {
                 i++;
-                try{
-                    processCommand(data);
-                }catch(CommandProcessorException e){
-                    // catch error, setting line number in script file that error occurred on
-                    e.setLineNumber(i);
-                    // print error
-                    System.out.println(e);
+            } else {
+                // unquoted field, running to the next whitespace or quote
+                int start = i;
+                while (i < length && !isWhitespace(c = line.charAt(i)) && c != '"' && c != '\'') {
+                    i++;
                 }
+                fields.add(line.substring(start, i));
             }
-            // close reader
-            myReader.close();
-        } catch (FileNotFoundException e) {
+        }
+        return fields;
+    }
+
+    /**
+     * Checks whether a character separates fields.
+     *
+     * @param c character
+     * @return {@link boolean}
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    /**
+     * Reads a script file and processes each line with {@link #processCommand(String)}.
+     * The file is read from the given path, or from the test folder if no such file exists.
+     * If the file cannot be read, the error is printed.
+     *
+     * @param file file
+     * @see ScriptRunner
+     */
+    public void processCommandFile(String file){
+        Path path = Paths.get(file);
+        if (!Files.exists(path)) {
+            // get script file in test folder specified as parameter
+            path = Paths.get("com/cscie97/ledger/test", file);
+        }
+        try (BufferedReader reader = ScriptRunner.open(path)) {
+            processCommands(reader);
+        } catch (IOException e) {
             // if file not found, print exception
-            System.out.println(e);
+            out.println(e);
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads a script line by line,
+     * running the processCommmand() method on each line.
+     * Also tracks the current line in the script,
+     * and will set the line number when a CommandProcessorException is thrown.
+     * <p>
+     * Output is flushed whenever the reader has no more input buffered, so output reaches an
+     * interactive user before the next line is read, and once the script has been processed.
+     *
+     * @param reader script
+     * @throws IOException if the script cannot be read
+     */
+    public void processCommands(BufferedReader reader) throws IOException {
+        int i = 0;
+        while (true) {
+            if (!reader.ready()) {
+                out.flush();
+            }
+            String data = reader.readLine();
+            if (data == null) {
+                break;
+            }
+            // count lines and run process command
+            i++;
+            processScriptCommand(parse(data, i));
+        }
+        endScript();
+    }
+
+    /**
+     * Runs a parsed line of a script, printing any error with the line's number.
+     *
+     * @param parsed parsed command
+     */
+    void processScriptCommand(ParsedCommand parsed) {
+        try{
+            execute(parsed);
+        }catch(CommandProcessorException e){
+            // catch error, setting line number in script file that error occurred on
+            e.setLineNumber(parsed.getLineNumber());
+            // print error
+            out.println(e);
+        }
+    }
+
+    /**
+     * Flushes command output.
+     */
+    void flush() {
+        out.flush();
+    }
+
+    /**
+     * Finishes a script, writing any committed blocks still buffered by the block store
+     * and flushing command output.
+     */
+    void endScript() {
+        if (currentLedger != null) {
+            // write any committed blocks still buffered by the block store
+            try {
+                currentLedger.sync();
+            } catch (LedgerException e) {
+                out.println(new CommandProcessorException(e));
+            }
         }
+        out.flush();
     }
-}
\ No newline at end of file
+}
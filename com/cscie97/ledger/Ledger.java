@@ -1,5 +1,15 @@
 package com.cscie97.ledger;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import static java.util.Objects.isNull;
 
 
@@ -13,6 +23,13 @@ import static java.util.Objects.isNull;
  * recomputing the hashes of each block and comparing the result with the hash that has been
  * stored in the next block.
  * [per Eric Gieseke's CSCI-E97, Assignment 1 Design Document)
+ * <p>
+ * Transactions may be processed by concurrent threads. Each transaction locks only the
+ * payer and receiver accounts, through a fixed set of striped locks acquired in stripe order,
+ * so transactions touching different accounts validate and apply in parallel. Fees owed to the
+ * master account are accumulated separately and credited whenever the master account is locked,
+ * so the master account is not a point of contention. Sealing a block is the only operation that
+ * excludes transaction processing.
  *
  * @see Transaction
  * @see Account
@@ -22,25 +39,290 @@ import static java.util.Objects.isNull;
  */
 public class Ledger {
 
+    /**
+     * Number of transactions in a full block, unless another block size is given.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 10;
+
+    /**
+     * Balance of the master account when the ledger is funded, unless another initial supply is set.
+     */
+    public static final long DEFAULT_INITIAL_SUPPLY = 2147483647L;
+
+    /**
+     * Number of most recent committed blocks kept on the heap when the ledger has a block store.
+     */
+    public static final int DEFAULT_RESIDENT_BLOCKS = 1024;
+
+    /**
+     * Number of striped locks guarding the accounts of the open block.
+     */
+    private static final int ACCOUNT_LOCK_STRIPES = 256;
+
+    /**
+     * Number of blocks checked together by one task when validating the blockchain.
+     */
+    private static final int VALIDATION_RANGE = 64;
+
     private String name;
     private String description;
     private String seed;
     private TreeMap<Integer, Block> blockMap;
     private Block genesisBlock;
+    private TransactionIndex transactionIndex;
+    private AccountStore accounts;
+    private AccountTransactionIndex accountTransactions;
+    private ParallelMerkleTree merkleBuilder;
+    private int blockSize;
+    private long maxBlockLatency;
+    private long initialSupply;
+    private volatile long blockOpenedAt;
+    private BlockStore blockStore;
+    // set once the block store is closed; its written blocks can still be read back
+    private volatile boolean storeClosed;
+    private int residentBlocks;
+    // state of the open block while it accepts transactions, moved into the block when it is sealed
+    private Transaction[] openTransactions;
+    private final AtomicInteger openCount;
+    private final AtomicLong pendingFees;
+    // held shared while a transaction is applied, exclusively while a block is sealed or an account created
+    private final ReentrantReadWriteLock sealLock;
+    private final ReentrantLock[] accountLocks;
+    // blocks closed to new transactions, and blocks whose hash has been computed
+    private volatile int closedThrough;
+    private volatile int sealedThrough;
+    // read and written only while the seal lock is held exclusively
+    private String lastSealedHash;
+    private volatile StateRoot lastSealedRoot;
+    private final Object sealMonitor;
+    // receives closed blocks to hash, seal and persist on other threads, null to do it inline
+    private Consumer<Block> blockHandoff;
+    private volatile ValidationCheckpoint checkpoint;
 
     /**
-     * Class Constructor.
+     * Class Constructor, using the default block size.
      *
      * @param name name of ledger
      * @param description description of ledger
      * @param seed hash value of genesis block (arbitrary)
      */
     public Ledger(String name, String description, String seed){
+        this(name, description, seed, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Class Constructor.
+     *
+     * @param name name of ledger
+     * @param description description of ledger
+     * @param seed hash value of genesis block (arbitrary)
+     * @param blockSize number of transactions in a full block
+     */
+    public Ledger(String name, String description, String seed, int blockSize){
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("block size must be at least 1");
+        }
+        this.blockSize = blockSize;
+        this.maxBlockLatency = 0;
+        this.initialSupply = DEFAULT_INITIAL_SUPPLY;
+        this.residentBlocks = DEFAULT_RESIDENT_BLOCKS;
         this.name = name;
         this.description = description;
         this.seed = seed;
         this.blockMap = new TreeMap<Integer, Block>();
         this.genesisBlock = new Block(1, seed, null);
+        this.transactionIndex = new TransactionIndex();
+        this.accounts = new AccountStore();
+        this.accountTransactions = new AccountTransactionIndex();
+        this.merkleBuilder = new ParallelMerkleTree();
+        this.openTransactions = new Transaction[blockSize];
+        this.openCount = new AtomicInteger();
+        this.pendingFees = new AtomicLong();
+        this.sealLock = new ReentrantReadWriteLock();
+        this.accountLocks = new ReentrantLock[ACCOUNT_LOCK_STRIPES];
+        for (int i = 0; i < accountLocks.length; i++) {
+            accountLocks[i] = new ReentrantLock();
+        }
+        this.lastSealedHash = seed;
+        this.lastSealedRoot = new StateRoot();
+        this.sealMonitor = new Object();
+    }
+
+    /**
+     * Recreates a ledger from the block store in the given directory, replaying every
+     * committed block. Accounts and transactions in the block that was open when the
+     * ledger was last used were never committed and are not recovered.
+     * Blocks committed from now on are appended to the same store.
+     *
+     * @param directory block store directory
+     * @return {@link Ledger}
+     * @see BlockStore
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public static Ledger open(Path directory) throws LedgerException {
+        try {
+            BlockStore store = BlockStore.open(directory);
+            Properties settings = store.readSettings();
+            Ledger ledger = new Ledger(settings.getProperty("name"),
+                    settings.getProperty("description"),
+                    settings.getProperty("seed"),
+                    Integer.parseInt(settings.getProperty("blockSize")));
+            ledger.setMaxBlockLatency(Long.parseLong(settings.getProperty("maxBlockLatency")));
+            ledger.setInitialSupply(Long.parseLong(settings.getProperty("initialSupply",
+                    Long.toString(DEFAULT_INITIAL_SUPPLY))));
+            ledger.residentBlocks = Math.max(Integer.parseInt(settings.getProperty("residentBlocks",
+                    Integer.toString(DEFAULT_RESIDENT_BLOCKS))), 1);
+            ledger.blockStore = store;
+            store.replay(ledger::restoreBlock);
+            if (ledger.blockMap.isEmpty()) {
+                // nothing was committed, start a new chain
+                ledger.fundLedger();
+            } else {
+                // open a new block after the last committed block
+                Block lastBlock = ledger.blockMap.lastEntry().getValue();
+                ledger.genesisBlock = ledger.loadBlock(1);
+                ledger.blockMap.put(lastBlock.getBlockNumber() + 1,
+                        new Block(lastBlock.getBlockNumber() + 1, lastBlock.getHash(), lastBlock));
+            }
+            return ledger;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new LedgerException("open ledger", "block store could not be read: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a block store in the given directory, writes the blocks committed so far,
+     * and appends every block committed from now on.
+     *
+     * @param directory block store directory
+     * @see BlockStore
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public void createBlockStore(Path directory) throws LedgerException {
+        awaitSealed(closedThrough);
+        sealLock.writeLock().lock();
+        try {
+            BlockStore store = BlockStore.create(directory, this);
+            for (Block block : blockMap.headMap(blockMap.lastKey()).values()) {
+                store.append(block);
+            }
+            store.flush();
+            this.blockStore = store;
+            this.storeClosed = false;
+        } catch (IOException e) {
+            throw new LedgerException("create block store", "block store could not be written: " + e.getMessage());
+        } finally {
+            sealLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes any committed blocks still buffered by the block store and forces them to disk.
+     *
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public void sync() throws LedgerException {
+        sealLock.writeLock().lock();
+        try {
+            if (blockStore != null && !storeClosed) {
+                blockStore.flush();
+            }
+        } catch (IOException e) {
+            throw new LedgerException("sync", "block store could not be written: " + e.getMessage());
+        } finally {
+            sealLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes any buffered committed blocks and closes the block store. Blocks and transactions
+     * already written can still be read from the closed store, but later blocks are not persisted.
+     *
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public void close() throws LedgerException {
+        sealLock.writeLock().lock();
+        try {
+            if (blockStore != null && !storeClosed) {
+                blockStore.close();
+                storeClosed = true;
+            }
+        } catch (IOException e) {
+            throw new LedgerException("close", "block store could not be written: " + e.getMessage());
+        } finally {
+            sealLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a committed block read back from the block store to the end of the chain,
+     * restoring the committed account state and transaction index.
+     *
+     * @param block committed block
+     * @throws IllegalStateException if the block does not follow the last block in the chain
+     */
+    void restoreBlock(Block block) {
+        Block previous = blockMap.isEmpty() ? null : blockMap.lastEntry().getValue();
+        int expected = previous == null ? 1 : previous.getBlockNumber() + 1;
+        String expectedHash = previous == null ? seed : previous.getHash();
+        if (block.getBlockNumber() != expected || !expectedHash.equals(block.getPreviousHash())) {
+            throw new IllegalStateException("block " + block.getBlockNumber() + " does not follow block "
+                    + (expected - 1));
+        }
+        block.setPreviousBlock(previous);
+        blockMap.put(block.getBlockNumber(), block);
+        accounts.commit(block);
+        accountTransactions.add(block, accounts);
+        markSealed(block);
+        ArrayList<Transaction> transactionList = block.getTransactionList();
+        for (int i = 0; i < transactionList.size(); i++) {
+            transactionIndex.put(transactionList.get(i).getTransactionId(), block.getBlockNumber(), i);
+        }
+        evictBlocks(block.getBlockNumber() + 1);
+    }
+
+    /**
+     * Removes committed blocks older than the most recent resident blocks from the block map,
+     * once the block store has written them to disk. Removed blocks are read back from the
+     * store's mapped segments when needed.
+     *
+     * @param openBlockNumber number of the open block
+     */
+    private void evictBlocks(int openBlockNumber) {
+        if (blockStore == null) {
+            return;
+        }
+        int keepFrom = openBlockNumber - residentBlocks;
+        while (!blockMap.isEmpty() && blockMap.firstKey() < keepFrom
+                && blockMap.firstKey() <= blockStore.getLastWrittenBlock()) {
+            blockMap.pollFirstEntry();
+            // drop the reference from the oldest resident block so the evicted block can be collected
+            if (!blockMap.isEmpty()) {
+                blockMap.firstEntry().getValue().setPreviousBlock(null);
+            }
+        }
+    }
+
+    /**
+     * Returns the block with the given number, from the block map if it is resident,
+     * otherwise decoded from the block store.
+     *
+     * @param blockNumber block number
+     * @return {@link Block} or null if the block does not exist
+     * @see Block
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private Block loadBlock(int blockNumber) throws LedgerException {
+        Block block = blockMap.get(blockNumber);
+        if (block == null && blockStore != null && !blockMap.isEmpty() && blockNumber >= 1
+                && blockNumber < blockMap.firstKey()) {
+            try {
+                block = blockStore.readBlock(blockNumber);
+            } catch (IOException e) {
+                throw new LedgerException("load block", "block could not be read: " + e.getMessage());
+            }
+        }
+        return block;
     }
 
     /**
@@ -50,11 +332,16 @@ public class Ledger {
      * @throws LedgerException com.cscie97.ledger. ledger exception
      */
     public void fundLedger() throws LedgerException {
-        if (blockMap.size() != 0){
-            throw new LedgerException("fund ledger", "fund ledger requires a new ledger");
+        sealLock.writeLock().lock();
+        try {
+            if (blockMap.size() != 0){
+                throw new LedgerException("fund ledger", "fund ledger requires a new ledger");
+            }
+            blockMap.put(1, genesisBlock);
+            createAccount("master");
+        } finally {
+            sealLock.writeLock().unlock();
         }
-        blockMap.put(1, genesisBlock);
-        createAccount("master");
     }
 
     /**
@@ -65,55 +352,65 @@ public class Ledger {
      * @throws LedgerException com.cscie97.ledger. ledger exception
      */
     public Account createAccount(String address) throws LedgerException {
-        // retrieve last entry in blockchain
-        Block currentBlock = blockMap.lastEntry().getValue();
-        if (currentBlock.getAccountBalanceMap().containsKey(address)) {
-            // if the most recent block contains the address already, require a unique address
-            throw new LedgerException("create account", "unique account address required.");
-        } else {
-            Account newAcct;
-            if ((address.equals("master") && (blockMap.size() == 1))){
+        sealLock.writeLock().lock();
+        try {
+            if (accounts.getId(address) >= 0) {
+                // if the address has already been committed or created in the open block, require a unique address
+                throw new LedgerException("create account", "unique account address required.");
+            }
+            if ((address.equals("master") && (blockMap.lastKey() == 1))){
                 // create master account and set maximum balance
-                newAcct = new Account("master");
-                newAcct.setBalance(2147483647);
+                accounts.create("master", initialSupply, blockMap.lastKey());
             }else{
                 // create account set balance to 0
-                newAcct = new Account(address);
-                newAcct.setBalance(0);
+                accounts.create(address, 0, blockMap.lastKey());
             }
-            // if valid address, create new account
-            HashMap<String, Account> genAcctBalanceMap = currentBlock.getAccountBalanceMap();
-            // add new account to ledger account balance map
-            genAcctBalanceMap.put(address, newAcct);
             return new Account(address);
+        } finally {
+            sealLock.writeLock().unlock();
         }
     };
 
     /**
      * Checks the current account balance for the block with a given address.
      * <p>
-     * In this ledger implementation, the latest block in the blockchain does not contain 10 transactions,
+     * In this ledger implementation, the latest block in the blockchain is not yet full,
      * therefore it is not yet "committed". Queries the block preceding the latest block for
      * accurate account balances.
      *
      * @param address account address
-     * @return {@link int}
+     * @return {@link long}
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public long getAccountBalance(String address) throws LedgerException {
+        sealExpiredBlock();
+        sealLock.readLock().lock();
+        try {
+            return getCommittedBalance(address);
+        } finally {
+            sealLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the committed balance of the account with the given address.
+     * The caller must hold the seal lock.
+     *
+     * @param address account address
+     * @return {@link long}
      * @throws LedgerException com.cscie97.ledger. ledger exception
      */
-    public int getAccountBalance(String address) throws LedgerException {
+    private long getCommittedBalance(String address) throws LedgerException {
         // instantiate last entry in blockchain, this entry is yet to be committed
         Block currentBlock = blockMap.lastEntry().getValue();
-        try {
-            // retrieve the account balance map from block preceding last entry
-            // this block has been committed and therefore reflects current account balances
-            HashMap<String, Account> acctBalanceMap = currentBlock.getPreviousBlock().getAccountBalanceMap();
-            // return account with given address
-            Account acct = acctBalanceMap.get(address);
-            return acct.getBalance();
-        }catch(Exception e){
-            // throw exception, invalid address, if no account found
+        // retrieve the account from the committed balances,
+        // which reflect the balances of the block preceding the last entry
+        int id = accounts.getId(address);
+        if (currentBlock.getPreviousBlock() == null || !accounts.isCommitted(id)) {
+            // throw exception, invalid address, if no block committed or no account found
             throw new LedgerException("get account balance", "invalid address");
         }
+        return accounts.getCommittedBalance(id);
     }
 
     /**
@@ -122,26 +419,98 @@ public class Ledger {
      * @return {@link HashMap}
      * @see HashMap
      * @see String
-     * @see Integer
+     * @see Long
      * @throws LedgerException com.cscie97.ledger. ledger exception
      */
-    public HashMap<String, Integer> getAccountBalances() throws LedgerException {
+    public HashMap<String, Long> getAccountBalances() throws LedgerException {
         // create hashmap for return object
-        HashMap<String, Integer> accountBalances = new HashMap<String, Integer>();
+        HashMap<String, Long> accountBalances;
+        sealExpiredBlock();
+        sealLock.readLock().lock();
+        try {
+            if (blockMap.lastEntry().getValue().getPreviousBlock() == null){
+                throw new LedgerException("get all account balances", "no block has been committed");
+            }
+            int count = accounts.getCommittedCount();
+            accountBalances = new HashMap<String, Long>(count * 4 / 3 + 1);
+            for (int id = 0; id < count; id++) {
+                // iterate through committed accounts, appending each balance to return object
+                accountBalances.put(accounts.getAddress(id), accounts.getCommittedBalance(id));
+            }
+        } finally {
+            sealLock.readLock().unlock();
+        }
+        return accountBalances;
+    }
+
+    /**
+     * Returns the balance of the account with the given address as of a committed block,
+     * that is after the block's transactions were applied.
+     * <p>
+     * Balances are looked up in the account's balance history by binary search,
+     * so the cost does not grow with the number of blocks, and no copy of the balances
+     * is kept for each block.
+     *
+     * @param address account address
+     * @param blockNumber number of a committed block
+     * @return {@link long}
+     * @see BalanceHistory
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public long getAccountBalance(String address, int blockNumber) throws LedgerException {
+        sealExpiredBlock();
+        sealLock.readLock().lock();
+        try {
+            if (blockNumber < 1 || blockNumber >= blockMap.lastKey()) {
+                // if block has not yet been committed, throw error
+                throw new LedgerException("get account balance", "block does not exist");
+            }
+            int id = accounts.getId(address);
+            if (!accounts.isCommitted(id, blockNumber)) {
+                // throw exception, invalid address, if the account did not exist as of the block
+                throw new LedgerException("get account balance", "invalid address");
+            }
+            return accounts.getCommittedBalance(id, blockNumber);
+        } finally {
+            sealLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a hashmap of the account ids and balances as of a committed block,
+     * holding the accounts that existed as of the block.
+     *
+     * @param blockNumber number of a committed block
+     * @return {@link HashMap}
+     * @see HashMap
+     * @see String
+     * @see Long
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public HashMap<String, Long> getAccountBalances(int blockNumber) throws LedgerException {
+        HashMap<String, Long> accountBalances = new HashMap<String, Long>();
+        sealExpiredBlock();
+        sealLock.readLock().lock();
         try {
-            Block lastVerifiedBlock = blockMap.lastEntry().getValue().getPreviousBlock();
-            for (var entry : lastVerifiedBlock.getAccountBalanceMap().entrySet()) {
-                // iterate through last verified block, appending each balance to return object
-                accountBalances.put(entry.getValue().getAddress(), entry.getValue().getBalance());
+            if (blockNumber < 1 || blockNumber >= blockMap.lastKey()) {
+                // if block has not yet been committed, throw error
+                throw new LedgerException("get all account balances", "block does not exist");
+            }
+            int count = accounts.getCommittedCount();
+            for (int id = 0; id < count; id++) {
+                // accounts created after the block have no balance as of the block
+                if (accounts.isCommitted(id, blockNumber)) {
+                    accountBalances.put(accounts.getAddress(id), accounts.getCommittedBalance(id, blockNumber));
+                }
             }
-            return accountBalances;
-        }catch(Exception e){
-            throw new LedgerException("get all account balances", "no block has been committed");
+        } finally {
+            sealLock.readLock().unlock();
         }
+        return accountBalances;
     }
 
     /**
-     * Queries the ledger's block map for the transaction with the specified transaction id,
+     * Looks up the transaction with the specified transaction id in the transaction index,
      * it then returns a deep copy of the transaction to insure immutability.
      *
      * @param transactionId transactionId
@@ -149,21 +518,31 @@ public class Ledger {
      * @see Transaction
      */
     public Transaction getTransaction(String transactionId){
-        // create transaction return object
-        Transaction retrievedTx = null;
         // parse string input into integer
         int txIdNum = Integer.parseInt(transactionId);
-        for (Map.Entry<Integer, Block> entry : blockMap.entrySet()) {
-            // iterate through blocks in ledger find transaction with matching id
-            ArrayList<Transaction> transactionList = entry.getValue().getTransactionList();
-            for (Transaction tx : transactionList) {
-                if (txIdNum == tx.getTransactionId()) {
-                    retrievedTx = tx;
-                }
+        Transaction retrievedTx;
+        sealLock.readLock().lock();
+        try {
+            // look up the block and slot holding the transaction in the transaction index
+            long position = transactionIndex.get(txIdNum);
+            // if transaction not found, return null
+            if(position < 0){ return null;}
+            int blockNumber = TransactionIndex.blockNumber(position);
+            Block block = blockMap.get(blockNumber);
+            if (blockNumber == blockMap.lastKey()) {
+                // the transaction is in the open block
+                retrievedTx = openTransactions[TransactionIndex.slot(position)];
+            } else if (block != null) {
+                retrievedTx = block.getTransactionList().get(TransactionIndex.slot(position));
+            } else {
+                // the block has been evicted, decode just this transaction from the block store
+                retrievedTx = blockStore.readTransaction(blockNumber, TransactionIndex.slot(position));
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            sealLock.readLock().unlock();
         }
-        // if transaction not found, return null
-        if(retrievedTx == null){ return null;}
 
         // create deep copy of transaction to insure immutability
         Transaction copiedTx = new Transaction(Integer.parseInt(transactionId),
@@ -175,6 +554,107 @@ public class Ledger {
         return copiedTx;
     };
 
+    /**
+     * Returns a page of the committed transactions paid or received by an account, oldest first.
+     * <p>
+     * The transactions are found through the account transaction index, which is maintained
+     * as blocks are committed, so the cost of a page depends on its length and not on the
+     * length of the blockchain. Transactions of evicted blocks are decoded from the block store.
+     * Deep copies of the transactions are returned to insure immutability.
+     *
+     * @param address account address
+     * @param from index of the first transaction of the page within the account's history
+     * @param limit largest number of transactions to return
+     * @return {@link List}
+     * @see Transaction
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public List<Transaction> getAccountTransactions(String address, int from, int limit) throws LedgerException {
+        if (from < 0 || limit < 0) {
+            throw new LedgerException("get account transactions", "from and limit must not be negative");
+        }
+        sealExpiredBlock();
+        List<Transaction> page = new ArrayList<Transaction>();
+        sealLock.readLock().lock();
+        try {
+            int id = accounts.getId(address);
+            if (!accounts.isCommitted(id)) {
+                throw new LedgerException("get account transactions", "invalid address");
+            }
+            for (long position : accountTransactions.get(id, from, limit)) {
+                int blockNumber = TransactionIndex.blockNumber(position);
+                Block block = blockMap.get(blockNumber);
+                Transaction tx = block != null
+                        ? block.getTransactionList().get(TransactionIndex.slot(position))
+                        // the block has been evicted, decode just this transaction from the block store
+                        : blockStore.readTransaction(blockNumber, TransactionIndex.slot(position));
+                page.add(new Transaction(tx.getTransactionId(), tx.getAmount(), tx.getFee(),
+                        tx.getNote(), tx.getPayer(), tx.getReceiver()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            sealLock.readLock().unlock();
+        }
+        return page;
+    }
+
+    /**
+     * Returns the number of committed transactions paid or received by an account.
+     *
+     * @param address account address
+     * @return {@link int}
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public int getAccountTransactionCount(String address) throws LedgerException {
+        sealExpiredBlock();
+        sealLock.readLock().lock();
+        try {
+            int id = accounts.getId(address);
+            if (!accounts.isCommitted(id)) {
+                throw new LedgerException("get account transactions", "invalid address");
+            }
+            return accountTransactions.count(id);
+        } finally {
+            sealLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates a merkle inclusion proof for the transaction with the specified transaction id.
+     * The proof can be checked against the merkle root of the block containing the transaction
+     * with {@link MerkleProof#verify(Transaction, String)}, without the rest of the block.
+     *
+     * @param transactionId transactionId
+     * @return {@link MerkleProof}
+     * @see MerkleProof
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public MerkleProof getTransactionProof(String transactionId) throws LedgerException {
+        long position = transactionIndex.get(Integer.parseInt(transactionId));
+        if (position < 0) {
+            throw new LedgerException("get transaction proof", "transaction does not exist");
+        }
+        awaitSealed(TransactionIndex.blockNumber(position));
+        sealLock.readLock().lock();
+        try {
+            if (TransactionIndex.blockNumber(position) == blockMap.lastKey()) {
+                // the merkle tree is only built once the block has been committed
+                throw new LedgerException("get transaction proof", "transaction has not been committed");
+            }
+            Block block = loadBlock(TransactionIndex.blockNumber(position));
+            if (block.getMerkleLevels() == null) {
+                // blocks read back from the block store rebuild their merkle levels on first use
+                block.setMerkleLevels(merkleBuilder.buildLevels(getTransactionStrings(block)));
+            }
+            MerkleProof proof = MerkleTree.createProof(block.getMerkleLevels(), TransactionIndex.slot(position));
+            proof.setBlockNumber(block.getBlockNumber());
+            return proof;
+        } finally {
+            sealLock.readLock().unlock();
+        }
+    }
+
     /**
      * Queries the ledger's block map for the block with the specified block number,
      * it then returns a deep copy of the block to insure immutability.
@@ -185,17 +665,30 @@ public class Ledger {
      * @throws LedgerException com.cscie97.ledger. ledger exception
      */
     public Block getBlock(int blockNumber) throws LedgerException{
-        if (blockNumber > blockMap.size() - 1){
-            // if block has not yet been committed, throw error
-            throw new LedgerException("get block", "block does not exist");
+        sealExpiredBlock();
+        awaitSealed(blockNumber);
+        Block retrievedBlock;
+        sealLock.readLock().lock();
+        try {
+            if (blockNumber < 1 || blockNumber >= blockMap.lastKey()){
+                // if block has not yet been committed, throw error
+                throw new LedgerException("get block", "block does not exist");
+            }
+            // retrieve block from blockMap, or from the block store if it is no longer resident
+            retrievedBlock = loadBlock(blockNumber);
+        } finally {
+            sealLock.readLock().unlock();
         }
-        // retrieve block from blockMap
-        Block retrievedBlock = blockMap.get(blockNumber);
         // perform deep copy of block to insure immutability
         Block copiedBlock = new Block(blockNumber,
                 retrievedBlock.getPreviousHash(),
                 retrievedBlock.getPreviousBlock());
         copiedBlock.setHash(retrievedBlock.getHash());
+        copiedBlock.setMerkleRoot(retrievedBlock.getMerkleRoot());
+        copiedBlock.setMerkleLevels(retrievedBlock.getMerkleLevels());
+        copiedBlock.setStateCommitment(retrievedBlock.getStateCommitment());
+        copiedBlock.setTotalSupply(retrievedBlock.getTotalSupply());
+        copiedBlock.setStateRoot(retrievedBlock.getStateRoot());
         copiedBlock.setTransactionList(retrievedBlock.getTransactionList());
         copiedBlock.setAccountBalanceMap(retrievedBlock.getAccountBalanceMap());
         return copiedBlock;
@@ -211,7 +704,10 @@ public class Ledger {
      * payer has sufficient funds,
      * fee is >= 10.
      * Then adds transaction to current block's transaction list, updates account balances,
-     * and calls blockFull() if block contains 10 transactions.
+     * and calls blockFull() if block contains the block size number of transactions.
+     * <p>
+     * May be called by concurrent threads. Transactions sharing an account are applied
+     * one at a time, in the order they take their slots in the block.
      *
      * @param transaction transaction
      * @return {@link String}
@@ -219,177 +715,892 @@ public class Ledger {
      * @throws LedgerException com.cscie97.ledger. ledger exception
      */
     public String processTransaction(Transaction transaction) throws LedgerException {
+        // commit the open block first if it has been open longer than the maximum latency
+        sealExpiredBlock();
+        while (true) {
+            int slot;
+            sealLock.readLock().lock();
+            try {
+                slot = applyTransaction(transaction, false);
+            } finally {
+                sealLock.readLock().unlock();
+            }
+            if (slot >= 0 && slot < blockSize - 1) {
+                return Integer.toString(transaction.getTransactionId());
+            }
+            // the block is full, either taken by this transaction's slot or before it could take one
+            sealFullBlock();
+            if (slot >= 0) {
+                return Integer.toString(transaction.getTransactionId());
+            }
+        }
+    };
+
+    /**
+     * Processes a batch of transactions in order, with the same result as calling
+     * {@link #processTransaction(Transaction)} for each transaction in turn.
+     * <p>
+     * The batch holds the seal lock for its whole run, so the transactions are validated and applied
+     * in one pass without waiting on other threads. Each block the batch fills is closed as soon as
+     * its last slot is taken; the merkle trees of the closed blocks are then built in parallel, and
+     * the blocks are sealed and persisted in order before the batch returns (unless a pipeline is
+     * sealing blocks). A transaction that fails validation does not stop the batch;
+     * its LedgerException is returned in its result instead.
+     *
+     * @param transactions transactions
+     * @return {@link List} one result for each transaction, in the same order
+     * @see TransactionResult
+     * @throws LedgerException com.cscie97.ledger. ledger exception, if a filled block cannot be committed
+     */
+    public List<TransactionResult> processTransactions(List<Transaction> transactions) throws LedgerException {
+        ArrayList<TransactionResult> results = new ArrayList<TransactionResult>(transactions.size());
+        // commit the open block first if it has been open longer than the maximum latency
+        sealExpiredBlock();
+        sealLock.writeLock().lock();
+        ArrayList<Block> closedBlocks = null;
+        if (blockHandoff == null) {
+            // collect the blocks the batch fills, to be hashed together
+            closedBlocks = new ArrayList<Block>();
+            blockHandoff = closedBlocks::add;
+        }
+        try {
+            if (!blockMap.isEmpty() && openCount.get() >= blockSize) {
+                // another thread took the open block's last slot and is waiting to seal it,
+                // or was refused a slot; seal the block before the batch takes any slot
+                blockFull(blockMap.lastEntry().getValue());
+            }
+            for (Transaction transaction : transactions) {
+                int slot;
+                try {
+                    slot = applyTransaction(transaction, true);
+                } catch (LedgerException e) {
+                    // record the failure and continue with the next transaction
+                    results.add(new TransactionResult(transaction, e));
+                    continue;
+                }
+                results.add(new TransactionResult(transaction, null));
+                if (slot == blockSize - 1) {
+                    // the block is full, no other thread can take its slots while the batch runs
+                    blockFull(blockMap.lastEntry().getValue());
+                }
+            }
+        } finally {
+            if (closedBlocks != null) {
+                blockHandoff = null;
+            }
+            try {
+                if (closedBlocks != null) {
+                    sealClosedBlocks(closedBlocks);
+                }
+            } finally {
+                sealLock.writeLock().unlock();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Hashes a run of closed blocks in parallel, then seals them in order, chains the open block
+     * to the last of them, and appends them to the block store.
+     * The caller must hold the seal lock exclusively.
+     *
+     * @param closedBlocks closed blocks, in block number order
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private void sealClosedBlocks(List<Block> closedBlocks) throws LedgerException {
+        if (closedBlocks.isEmpty()) {
+            return;
+        }
+        closedBlocks.parallelStream().forEach(this::hashBlock);
+        for (Block block : closedBlocks) {
+            sealBlock(block);
+        }
+        blockMap.lastEntry().getValue().setPreviousHash(lastSealedHash);
+        for (Block block : closedBlocks) {
+            appendBlock(block);
+        }
+        evictBlocks(blockMap.lastKey());
+    }
+
+    /**
+     * Validates a transaction and applies it to the open block. The caller must hold the seal lock;
+     * if it is held shared, the locks of the payer and receiver accounts are held while the
+     * transaction is applied, otherwise no other thread can change the open block and they are not needed.
+     *
+     * @param transaction transaction
+     * @param exclusive whether the caller holds the seal lock exclusively
+     * @return {@link int} slot of the transaction in the open block, or -1 if the block is full
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private int applyTransaction(Transaction transaction, boolean exclusive) throws LedgerException {
         String payerAddress = transaction.getPayer();
         String receiverAddress = transaction.getReceiver();
-        int payerBalance;
-        int receiverBalance;
-        int masterBalance;
-        Block currentBlock;
+        int transactionId = transaction.getTransactionId();
 
         // verify that transaction id is unique
-        if (getTransaction(Integer.toString(transaction.getTransactionId())) != null){
+        if (transactionIndex.contains(transactionId)){
             throw new LedgerException("process transaction", "unique transaction id required.");
         }
 
-        if (this.blockMap.size() == 1){
+        int openBlockNumber = blockMap.lastKey();
+        // resolve the payer and receiver to account ids once
+        int payer = accounts.getId(payerAddress);
+        int receiver = accounts.getId(receiverAddress);
+        if (openBlockNumber == 1){
             // if first block in the chain verify accounts exist in genesis block
-            try{ this.genesisBlock.getAccountBalanceMap().get(receiverAddress);
-            } catch(Exception e){
+            if (receiver < 0) {
                 throw new LedgerException("process transaction", "invalid receiver account address.");
             }
-            try{ this.genesisBlock.getAccountBalanceMap().get(payerAddress);
-            } catch(Exception e){
+            if (payer < 0) {
                 throw new LedgerException("process transaction", "invalid payer account address.");
             }
         }
         else {
-            // else use getAccountBalance to check if account exists in Ledger's blockMap
-            try{ getAccountBalance(receiverAddress);
-            } catch(Exception e){
+            // else check that the accounts have been committed
+            if (!accounts.isCommitted(receiver)) {
                 throw new LedgerException("process transaction", "invalid receiver account address.");
             }
-            try{ getAccountBalance(payerAddress);
-            }catch(Exception e){
+            if (!accounts.isCommitted(payer)) {
                 throw new LedgerException("process transaction", "invalid payer account address.");
             }
         }
-        // set current block to last block in blockchain
-        currentBlock = blockMap.lastEntry().getValue();
 
-        // instantiate payer and receiver balances
-        payerBalance = currentBlock.getAccountBalanceMap().get(payerAddress).getBalance();
-        receiverBalance = currentBlock.getAccountBalanceMap().get(receiverAddress).getBalance();
+        int payerStripe = stripe(payer);
+        int receiverStripe = stripe(receiver);
+        if (!exclusive) {
+            lockAccounts(payerStripe, receiverStripe);
+        }
+        try {
+            // the master account was created first, when the ledger was funded
+            int master = AccountStore.MASTER_ID;
+            boolean masterLocked = payer == master || receiver == master;
+            if (masterLocked) {
+                // the master account is locked, credit the fees owed to it so far
+                creditPendingFees();
+            }
 
-        // instantiate transfer fee and amount variables
-        int fee = transaction.getFee();
-        int amount = transaction.getAmount();
+            // instantiate transfer fee and amount variables
+            long fee = transaction.getFee();
+            long amount = transaction.getAmount();
 
-        if (payerBalance < (fee + amount)){
-            // throw error if payer lacks sufficient funds for transaction
-            throw new LedgerException("process transaction", "payer has insufficient funds.");
-        }
-        if (fee < 10){
-            // throw error if fee is below minimum amount(10)
-            throw new LedgerException("process transaction", "transaction fee must be at least 10.");
-        }
-        // add transaction to list on latest block in the ledger
-        currentBlock.getTransactionList().add(transaction);
+            if (amount < 0) {
+                // throw error if the transfer would move funds from receiver to payer
+                throw new LedgerException("process transaction", "transaction amount must not be negative.");
+            }
+            long cost;
+            try {
+                cost = Math.addExact(fee, amount);
+            } catch (ArithmeticException e) {
+                // throw error if amount and fee together exceed the largest balance
+                throw new LedgerException("process transaction", "payer has insufficient funds.");
+            }
+            if (accounts.getBalance(payer) < cost){
+                // throw error if payer lacks sufficient funds for transaction
+                throw new LedgerException("process transaction", "payer has insufficient funds.");
+            }
+            if (fee < 10){
+                // throw error if fee is below minimum amount(10)
+                throw new LedgerException("process transaction", "transaction fee must be at least 10.");
+            }
+            int slot;
+            if (exclusive) {
+                // no other thread can take a slot, the block is sealed as soon as it is full
+                slot = openCount.getAndIncrement();
+                openTransactions[slot] = transaction;
+                transactionIndex.put(transactionId, openBlockNumber, slot);
+            } else {
+                // claim the transaction id, rejecting a concurrent transaction with the same id
+                if (!transactionIndex.reserve(transactionId)) {
+                    throw new LedgerException("process transaction", "unique transaction id required.");
+                }
+                slot = openCount.getAndIncrement();
+                if (slot >= blockSize) {
+                    // no slot left, release the id and retry once the block has been sealed
+                    transactionIndex.remove(transactionId);
+                    return -1;
+                }
+                // add transaction to the open block before its position is published in the index
+                openTransactions[slot] = transaction;
+                transactionIndex.update(transactionId, openBlockNumber, slot);
+            }
 
-        // adjust payer balance
-        HashMap<String, Account> accountBalances = currentBlock.getAccountBalanceMap();
-        accountBalances.get(payerAddress).setBalance(payerBalance - (fee + amount));
+            // adjust payer balance; balances total the initial supply,
+            // so no balance can overflow once the payer is known to afford the cost
+            accounts.adjust(payer, -cost, openBlockNumber);
 
-        // adjust receiver balance
-        accountBalances.get(receiverAddress).setBalance(receiverBalance + amount);
+            // adjust receiver balance
+            accounts.adjust(receiver, amount, openBlockNumber);
 
-        // adjust master balance
-        masterBalance = currentBlock.getAccountBalanceMap().get("master").getBalance();
-        accountBalances.get("master").setBalance(masterBalance + fee);
+            // adjust master balance, or leave the fee for the next thread holding the master account
+            if (masterLocked) {
+                accounts.adjust(master, fee, openBlockNumber);
+            } else {
+                pendingFees.addAndGet(fee);
+            }
 
-        if(currentBlock.getTransactionList().size() == 10) {
-            // if transaction is 10th in block, compute hashes and create new block
-            blockFull(currentBlock);
+            if (slot == 0) {
+                // first transaction in block, start the latency clock
+                blockOpenedAt = System.nanoTime();
+            }
+            return slot;
+        } finally {
+            if (!exclusive) {
+                unlockAccounts(payerStripe, receiverStripe);
+            }
         }
-        return Integer.toString(transaction.getTransactionId());
-    };
+    }
 
     /**
-     * Hashes the current block, creates a new block to receive future transactions,
-     * and transfers account balances from current block to new block.
+     * Commits the open block if it holds at least one transaction and has been open for
+     * longer than the maximum block latency, so balances on a quiet ledger become visible
+     * without waiting for the block to fill. Called on entry to the ledger's public methods;
+     * does nothing when no maximum latency is set.
      *
-     * @param currentBlock currentBlock
      * @throws LedgerException com.cscie97.ledger. ledger exception
      */
-    private void blockFull(Block currentBlock) throws LedgerException {
-        // compute and hash for current block
-        String hash = computeHash(currentBlock);
-        currentBlock.setHash(hash);
-
-        // increment block id for use in next block
-        int nextBlockId = blockMap.size() + 1;
-
-        // create new block to receive next transaction
-        // (block id, previous block hash, previous block);
-        Block nextBlock = new Block(nextBlockId, hash, currentBlock);
-
-        // add new block to block map in ledger
-        blockMap.put(nextBlockId, nextBlock);
-
-        HashMap<String, Integer> previousBalances = getAccountBalances();
-        for (var entry : previousBalances.entrySet()) {
-            // update balances in newly created block with balances from previous block
-            Account temp = createAccount(entry.getKey());
-            temp.setBalance(entry.getValue());
-            nextBlock.getAccountBalanceMap().put(entry.getKey(), temp);
+    public void sealExpiredBlock() throws LedgerException {
+        if (maxBlockLatency <= 0 || !isExpired()) {
+            return;
+        }
+        sealLock.writeLock().lock();
+        try {
+            // check again, another thread may have sealed the block
+            if (!blockMap.isEmpty() && isExpired()) {
+                blockFull(blockMap.lastEntry().getValue());
+            }
+        } finally {
+            sealLock.writeLock().unlock();
         }
     }
 
     /**
-     * Returns a stringified hash value for the given block.
-     * Uses the following formula to compute hash:
-     * H( ledger seed + previous_block_hash + H(block_properties + merkle_root))
+     * Commits the open block now if it holds at least one transaction, without waiting for it to fill.
      *
-     * @param currentBlock currentBlock
-     * @return {@link String}
-     * @see String
+     * @throws LedgerException com.cscie97.ledger. ledger exception
      */
-    private String computeHash(Block currentBlock){
-        ArrayList<String> txList = new ArrayList<String>();
-        for (Transaction curr : currentBlock.getTransactionList()) {
-            // concatenate all attributes of transactions and add to arraylist
-            txList.add(curr.getConcat());
+    public void sealOpenBlock() throws LedgerException {
+        sealLock.writeLock().lock();
+        try {
+            if (!blockMap.isEmpty() && openCount.get() > 0) {
+                blockFull(blockMap.lastEntry().getValue());
+            }
+        } finally {
+            sealLock.writeLock().unlock();
         }
-        // compute merkle root with transaction arraylist
-        String merkleRoot = MerkleTree.createMerkleTree(txList);
-        // compute total hash for current block
-        String hash = MerkleTree.getSha(this.seed + currentBlock.getPreviousHash()
-                + MerkleTree.getSha(currentBlock.hashCode() + merkleRoot));
-        return hash;
     }
 
     /**
-     * Validates the state of the blockchain.
-     * Verifies:
-     * that account balances total to the max value,
-     * each completed block has exactly 10 transactions,
-     * the hash of each block is equal to the following block's previousHash field.
+     * Checks whether the open block holds transactions and has been open longer than the maximum latency.
      *
+     * @return {@link boolean}
+     */
+    private boolean isExpired() {
+        return openCount.get() > 0 && System.nanoTime() - blockOpenedAt >= maxBlockLatency * 1_000_000L;
+    }
+
+    /**
+     * Commits the open block if all of its slots have been taken.
+     *
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private void sealFullBlock() throws LedgerException {
+        sealLock.writeLock().lock();
+        try {
+            // another thread may already have sealed the block
+            if (openCount.get() >= blockSize) {
+                blockFull(blockMap.lastEntry().getValue());
+            }
+        } finally {
+            sealLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the current block, commits its account changes, and creates a new block
+     * to receive future transactions. The caller must hold the seal lock exclusively.
+     * <p>
+     * The block is hashed, sealed and appended to the block store before the new block is
+     * created, unless a block handoff is set, in which case the closed block is passed to the
+     * handoff and the new block's previous hash is filled in once the closed block is sealed.
+     * <p>
+     * The closed block's account balance map holds only the accounts the account store recorded
+     * as changed while it was open, so sealing cost does not grow with the number of accounts.
+     *
+     * @param currentBlock currentBlock
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private void blockFull(Block currentBlock) throws LedgerException {
+        // move the open block's transactions and account changes into the block
+        creditPendingFees();
+        int count = Math.min(openCount.get(), blockSize);
+        currentBlock.setTransactionList(new ArrayList<Transaction>(Arrays.asList(openTransactions).subList(0, count)));
+        currentBlock.setAccountBalanceMap(accounts.getChangedAccounts());
+
+        // keep the committed accounts the block replaces, for its change to the state root
+        currentBlock.setReplacedAccounts(accounts.getReplacedAccounts());
+
+        // commit the accounts changed in the current block, and index its transactions by account
+        accounts.commit();
+        accountTransactions.add(currentBlock, accounts);
+
+        if (blockHandoff == null) {
+            hashBlock(currentBlock);
+            sealBlock(currentBlock);
+            appendBlock(currentBlock);
+        }
+
+        // increment block id for use in next block
+        int nextBlockId = currentBlock.getBlockNumber() + 1;
+
+        // create new block to receive next transaction
+        // (block id, previous block hash, previous block);
+        // when sealing is handed off, the previous hash is set once the current block is sealed
+        Block nextBlock = new Block(nextBlockId, blockHandoff == null ? currentBlock.getHash() : null, currentBlock);
+
+        // add new block to block map in ledger
+        blockMap.put(nextBlockId, nextBlock);
+        openTransactions = new Transaction[blockSize];
+        openCount.set(0);
+        closedThrough = currentBlock.getBlockNumber();
+
+        if (blockHandoff == null) {
+            // release old committed blocks that the block store can serve
+            evictBlocks(nextBlockId);
+        } else {
+            blockHandoff.accept(currentBlock);
+        }
+    }
+
+    /**
+     * Computes the merkle levels, merkle root and state commitment of a closed block,
+     * caching them on the block, along with the change the block makes to the state root.
+     * The merkle levels are retained for inclusion proofs.
+     * Closed blocks are not changed by transactions, so this may run on any thread.
+     *
+     * @param block closed block
+     */
+    void hashBlock(Block block) {
+        byte[][] merkleLevels = merkleBuilder.buildLevels(getTransactionStrings(block));
+        block.setMerkleLevels(merkleLevels);
+        block.setMerkleRoot(Sha256.toHex(MerkleTree.root(merkleLevels)));
+        block.setStateCommitment(computeStateCommitment(block));
+
+        StateRoot stateChange = new StateRoot();
+        for (Account acct : block.getAccountBalanceMap().values()) {
+            // replace each changed account's previous balance with its new balance
+            Account replaced = block.getReplacedAccounts().get(acct.getAddress());
+            if (replaced != null) {
+                stateChange.remove(replaced.getAddress(), replaced.getBalance());
+            }
+            stateChange.add(acct.getAddress(), acct.getBalance());
+        }
+        block.setStateChange(stateChange);
+        block.setReplacedAccounts(null);
+    }
+
+    /**
+     * Chains a hashed block to the block sealed before it, applies its change to the running
+     * state root and total supply, and computes its hash from its header.
+     * Blocks must be sealed in order, by one thread at a time. The seal lock is held
+     * exclusively, since the last sealed hash is shared with the threads closing blocks.
+     *
+     * @param block hashed block
+     */
+    void sealBlock(Block block) {
+        sealLock.writeLock().lock();
+        try {
+            if (block.getPreviousHash() == null) {
+                // the block was opened before the previous block was sealed
+                block.setPreviousHash(lastSealedHash);
+            }
+            StateRoot stateRoot = new StateRoot(lastSealedRoot);
+            stateRoot.apply(block.getStateChange());
+            block.setTotalSupply(stateRoot.getTotal());
+            block.setStateRoot(stateRoot.getRoot());
+            block.setStateChange(null);
+            block.setHash(hashHeader(block.getHeader()));
+            markSealed(block);
+        } finally {
+            sealLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a sealed block to the block store, if there is one, then releases old committed blocks
+     * that the store can serve. Blocks must be persisted in order, by one thread at a time.
+     *
+     * @param block sealed block
      * @throws LedgerException com.cscie97.ledger. ledger exception
      */
+    void persistBlock(Block block) throws LedgerException {
+        appendBlock(block);
+        sealLock.writeLock().lock();
+        try {
+            evictBlocks(blockMap.lastKey());
+        } finally {
+            sealLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the handoff that receives each closed block to hash, seal and persist on other threads,
+     * or null to do so inline when the block is closed.
+     *
+     * @param blockHandoff blockHandoff
+     */
+    void setBlockHandoff(Consumer<Block> blockHandoff) {
+        sealLock.writeLock().lock();
+        try {
+            this.blockHandoff = blockHandoff;
+        } finally {
+            sealLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a sealed block to the block store, if there is one.
+     *
+     * @param block sealed block
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private void appendBlock(Block block) throws LedgerException {
+        BlockStore store = blockStore;
+        if (store != null && !storeClosed) {
+            // append the committed block to the on-disk log
+            try {
+                store.append(block);
+            } catch (IOException e) {
+                throw new LedgerException("commit block", "block could not be persisted: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Records that a block has been sealed and wakes threads waiting for it.
+     *
+     * @param block sealed block
+     */
+    private void markSealed(Block block) {
+        lastSealedHash = block.getHash();
+        lastSealedRoot = StateRoot.parse(block.getStateRoot(), block.getTotalSupply());
+        synchronized (sealMonitor) {
+            closedThrough = Math.max(closedThrough, block.getBlockNumber());
+            sealedThrough = block.getBlockNumber();
+            sealMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the block with the given number has been sealed, if it has been closed.
+     * Must not be called while holding the seal lock.
+     *
+     * @param blockNumber block number
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private void awaitSealed(int blockNumber) throws LedgerException {
+        if (sealedThrough >= blockNumber) {
+            return;
+        }
+        synchronized (sealMonitor) {
+            while (sealedThrough < blockNumber && blockNumber <= closedThrough) {
+                try {
+                    sealMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new LedgerException("await block", "interrupted while waiting for block " + blockNumber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the fees accumulated since the master account was last locked to the master account.
+     * The caller must hold the master account's lock, or the seal lock exclusively.
+     */
+    private void creditPendingFees() {
+        long fees = pendingFees.getAndSet(0);
+        if (fees != 0) {
+            accounts.adjust(AccountStore.MASTER_ID, fees, blockMap.lastKey());
+        }
+    }
+
+    /**
+     * Returns the index of the lock stripe guarding the given account.
+     * Account ids are dense, so consecutive accounts fall on different stripes.
+     *
+     * @param id account id
+     * @return {@link int}
+     */
+    private static int stripe(int id) {
+        return id & (ACCOUNT_LOCK_STRIPES - 1);
+    }
+
+    /**
+     * Locks two account stripes in stripe order, so that threads locking the same pair cannot deadlock.
+     *
+     * @param first first stripe
+     * @param second second stripe
+     */
+    private void lockAccounts(int first, int second) {
+        accountLocks[Math.min(first, second)].lock();
+        if (first != second) {
+            accountLocks[Math.max(first, second)].lock();
+        }
+    }
+
+    /**
+     * Unlocks two account stripes locked by {@link #lockAccounts(int, int)}.
+     *
+     * @param first first stripe
+     * @param second second stripe
+     */
+    private void unlockAccounts(int first, int second) {
+        if (first != second) {
+            accountLocks[Math.max(first, second)].unlock();
+        }
+        accountLocks[Math.min(first, second)].unlock();
+    }
+
+    /**
+     * Recomputes the stringified hash value for the given block from its contents.
+     * Uses the following formula to compute hash:
+     * H( ledger seed + H(block_header))
+     * where the block header covers the block number, previous block hash, merkle root,
+     * state commitment, total supply and state root only, so the cost does not depend
+     * on the length of the chain.
+     *
+     * @param currentBlock currentBlock
+     * @return {@link String}
+     * @see String
+     * @see Block#getHeader()
+     */
+    private String computeHash(Block currentBlock){
+        return hashHeader(Block.header(currentBlock.getBlockNumber(),
+                currentBlock.getPreviousHash(),
+                computeMerkleRoot(currentBlock),
+                computeStateCommitment(currentBlock),
+                currentBlock.getTotalSupply(),
+                currentBlock.getStateRoot()));
+    }
+
+    /**
+     * Returns the block hash for a serialized block header.
+     *
+     * @param header header
+     * @return {@link String}
+     * @see String
+     */
+    private String hashHeader(String header){
+        return MerkleTree.getSha(this.seed + MerkleTree.getSha(header));
+    }
+
+    /**
+     * Computes the merkle root of the transactions in the given block.
+     *
+     * @param currentBlock currentBlock
+     * @return {@link String}
+     * @see String
+     */
+    private String computeMerkleRoot(Block currentBlock){
+        // compute merkle root with transaction arraylist, in parallel for large blocks
+        return merkleBuilder.createMerkleTree(getTransactionStrings(currentBlock));
+    }
+
+    /**
+     * Returns the merkle leaf strings for the transactions in the given block.
+     *
+     * @param currentBlock currentBlock
+     * @return {@link ArrayList}
+     * @see ArrayList
+     * @see String
+     */
+    private ArrayList<String> getTransactionStrings(Block currentBlock){
+        ArrayList<String> txList = new ArrayList<String>();
+        for (Transaction curr : currentBlock.getTransactionList()) {
+            // concatenate all attributes of transactions and add to arraylist
+            txList.add(curr.getConcat());
+        }
+        return txList;
+    }
+
+    /**
+     * Computes a commitment to the account changes in the given block,
+     * hashing each changed address and balance in address order.
+     *
+     * @param currentBlock currentBlock
+     * @return {@link String}
+     * @see String
+     */
+    private String computeStateCommitment(Block currentBlock){
+        StringBuilder state = new StringBuilder();
+        for (Account acct : new TreeMap<String, Account>(currentBlock.getAccountBalanceMap()).values()) {
+            // serialize accounts in a canonical order
+            state.append(acct.getAddress()).append(':').append(acct.getBalance()).append(';');
+        }
+        return MerkleTree.getSha(state.toString());
+    }
+
+    /**
+     * Validates the state of the blockchain.
+     * Verifies:
+     * that account balances total to the initial supply after each block
+     * (comparing the total supply committed to in each block's header),
+     * that the account balances match the state root of the last committed block,
+     * each completed block has between 1 and the block size number of transactions,
+     * the hash of each block is equal to the following block's previousHash field.
+     * <p>
+     * The blocks are checked in parallel; the first failure in chain order is thrown.
+     *
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     * @see #validate(ValidationMonitor)
+     */
     public void validate() throws LedgerException{
-        for (Map.Entry<Integer, Block>
-                // iterate through each block in the blockchain
-                entry : blockMap.entrySet()){
-            if (entry.getValue().getBlockNumber() != blockMap.size()){
-                // if current block is not the most recent, uncommitted block, perform checks
-                if(entry.getValue().getTransactionList().size() != 10){
-                    // if block does not contain 10 transactions, throw error
-                    throw new LedgerException("validate blockchain", "block does not contain 10 transactions");
+        List<ValidationFailure> failures = validate(new ValidationMonitor());
+        if (!failures.isEmpty()) {
+            throw new LedgerException("validate blockchain", failures.get(0).getReason());
+        }
+    }
+
+    /**
+     * Validates the state of the blockchain, reporting every failing check rather than only the first.
+     * <p>
+     * The committed blocks are split into ranges that are checked concurrently on a fork-join pool.
+     * For each block, a range checks its transaction count, checks the total supply in its header,
+     * and recomputes the hash of the block before it, comparing it with the block's previous hash.
+     * Each block's header commits to the total of all balances and to the state root after the block,
+     * and is covered by the block's hash, so no check needs anything from another range and no
+     * account map is replayed. Once all ranges are checked, the committed account balances are
+     * checked against the state root and total supply of the last committed block.
+     * <p>
+     * The monitor reports progress as ranges are checked and may cancel the validation,
+     * in which case a LedgerException is thrown.
+     *
+     * @param monitor monitor
+     * @return {@link List} the failing checks, in block order, empty if the blockchain is valid
+     * @see ValidationFailure
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public List<ValidationFailure> validate(ValidationMonitor monitor) throws LedgerException {
+        return validate(monitor, false);
+    }
+
+    /**
+     * Validates only the blocks committed since the validation checkpoint, throwing the first failure
+     * in chain order. Validates the whole chain if there is no checkpoint.
+     *
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     * @see #validateSinceCheckpoint(ValidationMonitor)
+     */
+    public void validateSinceCheckpoint() throws LedgerException {
+        List<ValidationFailure> failures = validateSinceCheckpoint(new ValidationMonitor());
+        if (!failures.isEmpty()) {
+            throw new LedgerException("validate blockchain", failures.get(0).getReason());
+        }
+    }
+
+    /**
+     * Validates only the blocks committed since the validation checkpoint, reporting every failing check.
+     * <p>
+     * The checkpoint is recorded by every validation that finds no failures, and holds the number and
+     * hash of the last block validated and a digest of the two keyed with the ledger's seed.
+     * The checkpoint is checked first: its digest must match its contents, and the checkpoint block's
+     * stored hash, and the hash recomputed from its contents, must both equal the checkpointed hash.
+     * As each block's hash covers the hash of the block before it, rewriting any block before the
+     * checkpoint and rehashing the chain is detected without reading those blocks. Then only the blocks
+     * after the checkpoint are validated, and the account balances are checked against the state root.
+     * An edit to an earlier block that leaves the stored hashes untouched is found by a full validation.
+     * <p>
+     * If the checkpoint fails its check, the failure is reported and the whole chain is validated.
+     *
+     * @param monitor monitor
+     * @return {@link List} the failing checks, in block order, empty if the blocks are valid
+     * @see ValidationFailure
+     * @see ValidationCheckpoint
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public List<ValidationFailure> validateSinceCheckpoint(ValidationMonitor monitor) throws LedgerException {
+        return validate(monitor, true);
+    }
+
+    /**
+     * Validates the blockchain from the first block, or from the checkpoint if requested and intact,
+     * and records a new checkpoint if no check fails.
+     *
+     * @param monitor monitor
+     * @param sinceCheckpoint whether to start from the checkpoint
+     * @return {@link List} the failing checks, in block order
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private List<ValidationFailure> validate(ValidationMonitor monitor, boolean sinceCheckpoint)
+            throws LedgerException {
+        sealExpiredBlock();
+        while (true) {
+            // every closed block must be sealed, so the committed balances match the last state root
+            awaitSealed(closedThrough);
+            sealLock.readLock().lock();
+            if (sealedThrough >= closedThrough) {
+                break;
+            }
+            sealLock.readLock().unlock();
+        }
+        try {
+            int lastBlock = Math.min(blockMap.lastKey() - 1, sealedThrough);
+            ArrayList<ValidationFailure> failures = new ArrayList<ValidationFailure>();
+            int firstBlock = 1;
+            ValidationCheckpoint start = checkpoint;
+            if (sinceCheckpoint && start != null && start.getBlockNumber() <= lastBlock) {
+                if (isCheckpointIntact(start)) {
+                    firstBlock = start.getBlockNumber() + 1;
+                } else {
+                    failures.add(new ValidationFailure(start.getBlockNumber(), "validation checkpoint does not" +
+                            " match the blockchain, blockchain has been manipulated."));
                 }
-                if (entry.getValue().getBlockNumber() > 1) {
-                    // if block is not the initial block in chain, perform check
-                    if (!(entry.getValue().getPreviousHash()
-                            .equals(computeHash(entry.getValue().getPreviousBlock())))) {
-                        // retrieve the preceding block, compute the hash
-                        // compare hash to the current blocks 'previousHash' attribute
-                        throw new LedgerException("validate blockchain", "block hash is not equal to previous block hash," +
-                                " blockchain has been manipulated.");
-                    }
+            }
+            monitor.start(lastBlock - firstBlock + 1);
+            ArrayList<ValidationRange> ranges = new ArrayList<ValidationRange>();
+            for (int from = firstBlock; from <= lastBlock; from += VALIDATION_RANGE) {
+                ranges.add(new ValidationRange(from, Math.min(from + VALIDATION_RANGE - 1, lastBlock), monitor));
+            }
+            // check the ranges on the pool, the calling thread holds the seal lock for them
+            ForkJoinTask.invokeAll(ranges);
+
+            for (ValidationRange range : ranges) {
+                if (range.error != null) {
+                    throw range.error;
                 }
-                int sum = 0;
-                for (Map.Entry<String, Account> curr : entry.getValue().getAccountBalanceMap().entrySet()){
-                    // add account balances in the current block
-                    sum += curr.getValue().getBalance();
+            }
+            if (monitor.isCancelled()) {
+                throw new LedgerException("validate blockchain", "validation cancelled");
+            }
+            for (ValidationRange range : ranges) {
+                failures.addAll(range.failures);
+            }
+            if (lastBlock >= 1) {
+                Block block = loadBlock(lastBlock);
+                StateRoot committed = new StateRoot();
+                for (int id = 0; id < accounts.getCommittedCount(); id++) {
+                    committed.add(accounts.getAddress(id), accounts.getCommittedBalance(id));
                 }
-                if(sum != Integer.MAX_VALUE){
-                    // if sum of balances is not equal to original master balance, throw error
-                    throw new LedgerException("validate blockchain", "account balances do not total to" +
-                            " the initial total blockchain value");
+                if (committed.getTotal() != block.getTotalSupply()
+                        || !committed.getRoot().equals(block.getStateRoot())) {
+                    // if the balances do not match the state committed to by the last block, record failure
+                    failures.add(new ValidationFailure(lastBlock, "account balances do not match the state" +
+                            " root of the last block, blockchain has been manipulated."));
+                }
+                if (failures.isEmpty()) {
+                    recordCheckpoint(block);
                 }
             }
+            return failures;
+        } finally {
+            sealLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks a validation checkpoint against its digest and against the block it names.
+     *
+     * @param start checkpoint
+     * @return {@link boolean}
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private boolean isCheckpointIntact(ValidationCheckpoint start) throws LedgerException {
+        if (!start.getDigest().equals(computeCheckpointDigest(start.getBlockNumber(), start.getBlockHash()))) {
+            return false;
+        }
+        Block block = loadBlock(start.getBlockNumber());
+        return start.getBlockHash().equals(block.getHash()) && start.getBlockHash().equals(computeHash(block));
+    }
+
+    /**
+     * Records a validation checkpoint at the given block, unless a later block has been checkpointed.
+     *
+     * @param block last validated block
+     */
+    private synchronized void recordCheckpoint(Block block) {
+        if (checkpoint == null || checkpoint.getBlockNumber() <= block.getBlockNumber()) {
+            checkpoint = new ValidationCheckpoint(block.getBlockNumber(), block.getHash(),
+                    computeCheckpointDigest(block.getBlockNumber(), block.getHash()));
         }
     }
 
+    /**
+     * Computes the digest of a validation checkpoint, keyed with the ledger's seed,
+     * over the block number and block hash. The block hash covers the state root,
+     * so the digest commits to the account balances as well.
+     *
+     * @param blockNumber block number
+     * @param blockHash block hash
+     * @return {@link String}
+     * @see String
+     */
+    private String computeCheckpointDigest(int blockNumber, String blockHash) {
+        return MerkleTree.getSha(this.seed + MerkleTree.getSha(blockNumber + "|" + blockHash));
+    }
+
+    /**
+     * Checks a range of committed blocks for {@link #validate(ValidationMonitor)}.
+     * Runs on a fork-join pool while the validating thread holds the seal lock.
+     */
+    private class ValidationRange extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final ValidationMonitor monitor;
+        // failing checks, in block order
+        private final ArrayList<ValidationFailure> failures;
+        private LedgerException error;
+
+        ValidationRange(int from, int to, ValidationMonitor monitor) {
+            this.from = from;
+            this.to = to;
+            this.monitor = monitor;
+            this.failures = new ArrayList<ValidationFailure>();
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Block previousBlock = from > 1 ? loadBlock(from - 1) : null;
+                int blockNumber;
+                for (blockNumber = from; blockNumber <= to && !monitor.isCancelled(); blockNumber++) {
+                    // read evicted blocks from the block store
+                    Block block = loadBlock(blockNumber);
+                    int txCount = block.getTransactionList().size();
+                    if (txCount < 1 || txCount > blockSize) {
+                        // if block is empty or holds more than the block size, record failure
+                        fail(blockNumber, "block does not contain between 1 and " + blockSize + " transactions");
+                    }
+                    if (blockNumber > 1 && !block.getPreviousHash().equals(computeHash(previousBlock))) {
+                        // recompute the preceding block's hash,
+                        // compare hash to the current blocks 'previousHash' attribute
+                        fail(blockNumber, "block hash is not equal to previous block hash," +
+                                " blockchain has been manipulated.");
+                    }
+                    if (block.getTotalSupply() != initialSupply) {
+                        // if sum of balances is not equal to original master balance, record failure
+                        fail(blockNumber, "account balances do not total to the initial total blockchain value");
+                    }
+                    previousBlock = block;
+                }
+                monitor.checked(blockNumber - from);
+            } catch (LedgerException e) {
+                error = e;
+            }
+        }
+
+        /**
+         * Records a failing check.
+         *
+         * @param blockNumber block number
+         * @param reason reason
+         */
+        private void fail(int blockNumber, String reason) {
+            failures.add(new ValidationFailure(blockNumber, reason));
+        }
+    }
 
     /**
      * get name
@@ -443,7 +1654,77 @@ public class Ledger {
 
 
     /**
-     * get block map
+     * get block size
+     *
+     * @return {@link int}
+     */
+    public int getBlockSize() {return this.blockSize;}
+
+
+    /**
+     * get max block latency
+     *
+     * @return {@link long} maximum time in milliseconds a block with transactions stays open, 0 if unlimited
+     */
+    public long getMaxBlockLatency() {return this.maxBlockLatency;}
+
+
+    /**
+     * set max block latency
+     *
+     * @param maxBlockLatency maximum time in milliseconds a block with transactions stays open, 0 if unlimited
+     */
+    public void setMaxBlockLatency(long maxBlockLatency) {this.maxBlockLatency = maxBlockLatency;}
+
+
+    /**
+     * get initial supply
+     *
+     * @return {@link long} balance of the master account when the ledger is funded,
+     *         which all account balances total to
+     */
+    public long getInitialSupply() {return this.initialSupply;}
+
+
+    /**
+     * set initial supply, used by {@link #fundLedger()}
+     *
+     * @param initialSupply balance of the master account when the ledger is funded
+     */
+    public void setInitialSupply(long initialSupply) {this.initialSupply = initialSupply;}
+
+
+    /**
+     * get resident blocks
+     *
+     * @return {@link int} number of recent committed blocks kept on the heap when a block store is attached
+     */
+    public int getResidentBlocks() {return this.residentBlocks;}
+
+
+    /**
+     * set resident blocks, recording the setting in the block store if one is attached
+     *
+     * @param residentBlocks number of recent committed blocks kept on the heap when a block store is attached
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public void setResidentBlocks(int residentBlocks) throws LedgerException {
+        sealLock.writeLock().lock();
+        try {
+            this.residentBlocks = Math.max(residentBlocks, 1);
+            if (blockStore != null && !storeClosed) {
+                blockStore.writeSettings(this);
+            }
+        } catch (IOException e) {
+            throw new LedgerException("set resident blocks", "block store could not be written: " + e.getMessage());
+        } finally {
+            sealLock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * get block map, holding the open block and the resident committed blocks
      *
      * @return {@link TreeMap}
      * @see TreeMap
@@ -458,7 +1739,71 @@ public class Ledger {
      *
      * @param blockMap blockMap
      */
-    public void setBlockMap(TreeMap<Integer, Block> blockMap) {this.blockMap = blockMap;}
+    public void setBlockMap(TreeMap<Integer, Block> blockMap) {
+        sealLock.writeLock().lock();
+        try {
+            this.blockMap = blockMap;
+            // rebuild the committed account balances and transaction index for the new block map
+            this.accounts = new AccountStore();
+            this.accountTransactions.clear();
+            for (Block block : blockMap.headMap(blockMap.lastKey()).values()) {
+                accounts.commit(block);
+                accountTransactions.add(block, accounts);
+            }
+            this.transactionIndex.clear();
+            for (Block block : blockMap.values()) {
+                ArrayList<Transaction> transactionList = block.getTransactionList();
+                for (int i = 0; i < transactionList.size(); i++) {
+                    transactionIndex.put(transactionList.get(i).getTransactionId(), block.getBlockNumber(), i);
+                }
+            }
+            // the last block is open, take over its transactions and account changes
+            Block openBlock = blockMap.lastEntry().getValue();
+            for (Account acct : openBlock.getAccountBalanceMap().values()) {
+                accounts.put(acct.getAddress(), acct.getBalance(), openBlock.getBlockNumber());
+            }
+            this.openTransactions = openBlock.getTransactionList().toArray(
+                    new Transaction[Math.max(blockSize, openBlock.getTransactionList().size())]);
+            this.openCount.set(openBlock.getTransactionList().size());
+            this.pendingFees.set(0);
+            this.checkpoint = null;
+            if (openBlock.getPreviousBlock() == null) {
+                this.lastSealedHash = seed;
+                this.lastSealedRoot = new StateRoot();
+                this.closedThrough = 0;
+                this.sealedThrough = 0;
+            } else {
+                markSealed(openBlock.getPreviousBlock());
+                this.closedThrough = this.sealedThrough;
+            }
+        } finally {
+            sealLock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * get validation checkpoint
+     *
+     * @return {@link ValidationCheckpoint} or null if the blockchain has not been validated
+     * @see ValidationCheckpoint
+     */
+    public ValidationCheckpoint getValidationCheckpoint() {return this.checkpoint;}
+
+
+    /**
+     * get state root, the commitment to every account balance and to their total as of the
+     * last committed block. Ledgers holding the same balances have equal state roots.
+     *
+     * @return {@link StateRoot}
+     * @see StateRoot
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public StateRoot getStateRoot() throws LedgerException {
+        // wait for blocks closed so far to be sealed
+        awaitSealed(closedThrough);
+        return new StateRoot(this.lastSealedRoot);
+    }
 
 
     /**
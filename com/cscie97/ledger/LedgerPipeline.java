@@ -0,0 +1,337 @@
+package com.cscie97.ledger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Processes transactions for a Ledger through a pipeline of single-threaded stages.
+ * <p>
+ * Submitting threads publish transactions into a preallocated ring buffer. Each submitter claims
+ * the next sequence number, waits until the slot for that sequence has been consumed on the
+ * previous lap of the ring, stores the transaction, and publishes the slot by recording its
+ * sequence number. A single sequencer thread consumes the slots strictly in sequence order and
+ * applies each transaction with {@link Ledger#processTransaction(Transaction)}, so transactions
+ * are applied with exactly the semantics of a single thread calling the ledger in submission order.
+ * The result, or the LedgerException explaining why the transaction was rejected, completes the
+ * future returned to the submitter.
+ * <p>
+ * When the sequencer closes a full block, the block's merkle tree, header hash and persistence
+ * are handed to three further stages, each on its own thread, so hashing and block store I/O
+ * overlap with validating the next block's transactions. Blocks pass through every stage in order.
+ * A closed block is not visible through {@link Ledger#getBlock(int)} until it has been sealed,
+ * and the sequencer pauses if too many closed blocks are waiting to be persisted.
+ *
+ * @see Ledger
+ * @author austinhigh
+ */
+public class LedgerPipeline {
+
+    /**
+     * Default number of slots in the ring buffer.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Default number of closed blocks that may wait to be hashed, sealed and persisted.
+     */
+    public static final int DEFAULT_MAX_PENDING_BLOCKS = 64;
+
+    private static final long IDLE_NANOS = 50_000L;
+
+    // set in the claimed count once the pipeline is closed, so no sequence can be claimed after closing
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    // marks the end of the stream of blocks passed between stages
+    private static final Block END = new Block(0, null, null);
+
+    private final Ledger ledger;
+    private final int mask;
+    private final int maxPendingBlocks;
+    private final Slot[] slots;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed;
+    private final AtomicLong consumed;
+    private final AtomicLong applied;
+    private final AtomicInteger pendingBlocks;
+    private final LinkedBlockingQueue<Block> hashQueue;
+    private final LinkedBlockingQueue<Block> sealQueue;
+    private final LinkedBlockingQueue<Block> persistQueue;
+    private final Thread sequencer;
+    private final Thread hasher;
+    private final Thread sealer;
+    private final Thread persister;
+    private volatile LedgerException failure;
+
+    /**
+     * Class Constructor, using the default capacity.
+     *
+     * @param ledger ledger
+     */
+    public LedgerPipeline(Ledger ledger) {
+        this(ledger, DEFAULT_CAPACITY, DEFAULT_MAX_PENDING_BLOCKS);
+    }
+
+    /**
+     * Class Constructor. The pipeline's threads are started by {@link #start()}.
+     *
+     * @param ledger ledger
+     * @param capacity number of slots in the ring buffer, rounded up to a power of two
+     * @param maxPendingBlocks number of closed blocks that may wait to be persisted
+     */
+    public LedgerPipeline(Ledger ledger, int capacity, int maxPendingBlocks) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.ledger = ledger;
+        this.mask = size - 1;
+        this.maxPendingBlocks = Math.max(maxPendingBlocks, 1);
+        this.slots = new Slot[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            // no slot has been published on the first lap
+            published.set(i, -1);
+        }
+        this.claimed = new AtomicLong();
+        this.consumed = new AtomicLong();
+        this.applied = new AtomicLong();
+        this.pendingBlocks = new AtomicInteger();
+        this.hashQueue = new LinkedBlockingQueue<Block>();
+        this.sealQueue = new LinkedBlockingQueue<Block>();
+        this.persistQueue = new LinkedBlockingQueue<Block>();
+        this.sequencer = new Thread(this::sequence, "ledger-sequencer");
+        this.hasher = new Thread(() -> stage(hashQueue, sealQueue, this::hash), "ledger-hasher");
+        this.sealer = new Thread(() -> stage(sealQueue, persistQueue, this::seal), "ledger-sealer");
+        this.persister = new Thread(() -> stage(persistQueue, null, this::persist), "ledger-persister");
+    }
+
+    /**
+     * Hands the ledger's block sealing to the pipeline's stages and starts the pipeline's threads.
+     */
+    public void start() {
+        ledger.setBlockHandoff(this::handoff);
+        sequencer.start();
+        hasher.start();
+        sealer.start();
+        persister.start();
+    }
+
+    /**
+     * Submits a transaction to be applied in submission order. Blocks while the ring buffer is full.
+     *
+     * @param transaction transaction
+     * @return {@link CompletableFuture} completed with the transaction id, or exceptionally
+     *         with the LedgerException if the transaction is rejected
+     * @see CompletableFuture
+     */
+    public CompletableFuture<String> submit(Transaction transaction) {
+        CompletableFuture<String> result = new CompletableFuture<String>();
+        long sequence;
+        do {
+            // claim the next sequence, unless the pipeline has been closed
+            sequence = claimed.get();
+            if ((sequence & CLOSED) != 0) {
+                result.completeExceptionally(new LedgerException("submit transaction", "pipeline is closed"));
+                return result;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        // wait until the sequencer has taken this slot's entry from the previous lap
+        while (sequence - slots.length >= consumed.get()) {
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+        Slot slot = slots[(int) sequence & mask];
+        slot.transaction = transaction;
+        slot.result = result;
+        published.set((int) sequence & mask, sequence);
+        LockSupport.unpark(sequencer);
+        return result;
+    }
+
+    /**
+     * Waits until every transaction submitted so far has been applied, and every block closed
+     * so far has been sealed and persisted, then forces the block store to disk.
+     *
+     * @throws LedgerException if a block could not be persisted, or the wait is interrupted
+     */
+    public void flush() throws LedgerException {
+        long target = claimed.get() & ~CLOSED;
+        while (applied.get() < target || pendingBlocks.get() > 0) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new LedgerException("flush pipeline", "interrupted");
+            }
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        ledger.sync();
+    }
+
+    /**
+     * Rejects further submissions, applies and persists the transactions already submitted,
+     * stops the pipeline's threads and returns block sealing to the ledger.
+     *
+     * @throws LedgerException if a block could not be persisted, or the wait is interrupted
+     */
+    public void close() throws LedgerException {
+        claimed.getAndUpdate(claims -> claims | CLOSED);
+        try {
+            flush();
+        } finally {
+            LockSupport.unpark(sequencer);
+            hashQueue.add(END);
+            try {
+                sequencer.join();
+                hasher.join();
+                sealer.join();
+                persister.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ledger.setBlockHandoff(null);
+        }
+    }
+
+    /**
+     * get pending blocks
+     *
+     * @return {@link int} number of closed blocks not yet persisted
+     */
+    public int getPendingBlocks() {
+        return this.pendingBlocks.get();
+    }
+
+    /**
+     * Sequencer loop, applying published transactions in sequence order until the pipeline is closed
+     * and every claimed sequence has been applied.
+     */
+    private void sequence() {
+        long next = 0;
+        long claims;
+        while (((claims = claimed.get()) & CLOSED) == 0 || next < (claims & ~CLOSED)) {
+            int index = (int) next & mask;
+            if (published.get(index) != next || pendingBlocks.get() >= maxPendingBlocks) {
+                // nothing published yet, or the later stages are behind
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            Slot slot = slots[index];
+            Transaction transaction = slot.transaction;
+            CompletableFuture<String> result = slot.result;
+            slot.transaction = null;
+            slot.result = null;
+            // release the slot to submitters on the next lap
+            consumed.set(++next);
+            try {
+                result.complete(ledger.processTransaction(transaction));
+            } catch (LedgerException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            applied.set(next);
+        }
+    }
+
+    /**
+     * Receives a block closed by the ledger, called while the ledger's seal lock is held.
+     *
+     * @param block closed block
+     */
+    private void handoff(Block block) {
+        pendingBlocks.incrementAndGet();
+        hashQueue.add(block);
+    }
+
+    /**
+     * Hash stage, computing the block's merkle tree and state commitment.
+     *
+     * @param block closed block
+     */
+    private void hash(Block block) {
+        ledger.hashBlock(block);
+    }
+
+    /**
+     * Seal stage, chaining the block to the previous block and computing its hash.
+     *
+     * @param block hashed block
+     */
+    private void seal(Block block) {
+        ledger.sealBlock(block);
+    }
+
+    /**
+     * Persist stage, appending the block to the block store.
+     *
+     * @param block sealed block
+     */
+    private void persist(Block block) {
+        try {
+            ledger.persistBlock(block);
+        } catch (LedgerException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Runs one stage, taking blocks from its input queue in order and passing each to the next
+     * stage's queue once processed, until the end marker arrives. Once any stage has failed, the
+     * failure is kept for {@link #flush()} to throw, and every later block is dropped rather than
+     * processed, so the stages keep draining and no waiter is left waiting for a block.
+     *
+     * @param input input queue
+     * @param output output queue, or null for the last stage
+     * @param work work done on each block
+     */
+    private void stage(LinkedBlockingQueue<Block> input, LinkedBlockingQueue<Block> output, Stage work) {
+        while (true) {
+            Block block;
+            try {
+                block = input.take();
+            } catch (InterruptedException e) {
+                // stages only stop at the end marker, so no closed block is left unsealed
+                continue;
+            }
+            if (block == END) {
+                if (output != null) {
+                    output.add(block);
+                }
+                return;
+            }
+            if (failure == null) {
+                try {
+                    work.process(block);
+                } catch (RuntimeException e) {
+                    failure = new LedgerException("commit block", "block " + block.getBlockNumber()
+                            + " could not be committed: " + e);
+                }
+            }
+            if (output != null && failure == null) {
+                output.add(block);
+            } else {
+                // the block has been persisted, or is dropped after a failure
+                pendingBlocks.decrementAndGet();
+                LockSupport.unpark(sequencer);
+            }
+        }
+    }
+
+    /**
+     * Work done on each block by a stage.
+     */
+    private interface Stage {
+        void process(Block block);
+    }
+
+    /**
+     * One preallocated entry of the ring buffer.
+     */
+    private static final class Slot {
+        private Transaction transaction;
+        private CompletableFuture<String> result;
+    }
+}
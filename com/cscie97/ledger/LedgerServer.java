@@ -0,0 +1,464 @@
+package com.cscie97.ledger;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves a Ledger to many concurrent clients over TCP, using the command grammar of
+ * {@link CommandProcessor}.
+ * <p>
+ * A client sends commands one per line, and may send any number of them without waiting for
+ * responses. Each command's response is the output the CommandProcessor prints for it, errors
+ * included, followed by a line holding a single ".", and responses are sent in the order the
+ * commands were received. Each connection is a separate session, with its own CommandProcessor
+ * and access type, on the ledger shared by every connection. Clients are not authenticated, so
+ * sessions reject the commands that read or write files on the server or replace the session's
+ * ledger, unless the server is started with file commands allowed.
+ * <p>
+ * A single selector thread accepts connections, reads requests and writes responses without
+ * blocking. Complete lines are queued on their connection, and a worker thread executes a
+ * connection's queued commands in order, so commands from one connection never run concurrently,
+ * while commands from different connections run in parallel on the thread safe ledger. All the
+ * responses to the commands a worker executes together are written as one buffer, so a client
+ * pipelining requests receives its responses in large writes. A connection stops being read while
+ * too many of its commands are waiting, so a fast client cannot queue unbounded work.
+ * <p>
+ * Usage: LedgerServer [--bind address] [--allow-file-commands] [port] [block-store-directory]
+ * Serves a new funded ledger, or the ledger in the given block store directory, on the loopback
+ * address unless another address is given. Committed blocks are written to the block store when
+ * the server stops.
+ *
+ * @see CommandProcessor
+ * @see Ledger
+ * @author austinhigh
+ */
+public class LedgerServer {
+
+    /**
+     * Default TCP port.
+     */
+    public static final int DEFAULT_PORT = 7700;
+
+    /**
+     * Line marking the end of the response to one command.
+     */
+    public static final String END_OF_RESPONSE = ".";
+
+    /**
+     * Number of queued commands at which a connection stops being read.
+     */
+    public static final int MAX_PENDING_COMMANDS = 4096;
+
+    private static final int MAX_LINE_BYTES = 1 << 20;
+
+    private final Ledger ledger;
+    private final boolean fileCommands;
+    private final ExecutorService workers;
+    private final ConcurrentLinkedQueue<Connection> ready;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread selectorThread;
+    private volatile boolean closed;
+
+    /**
+     * Class Constructor. The server accepts connections once {@link #start(InetSocketAddress)} is called.
+     *
+     * @param ledger ledger shared by every connection
+     * @param workers number of threads executing commands
+     * @param fileCommands true to allow sessions the commands that read or write files on the
+     *                     server or replace the session's ledger
+     * @see CommandProcessor#CommandProcessor(PrintWriter, Ledger, boolean)
+     */
+    public LedgerServer(Ledger ledger, int workers, boolean fileCommands) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1");
+        }
+        this.ledger = ledger;
+        this.fileCommands = fileCommands;
+        this.workers = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "ledger-server-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ready = new ConcurrentLinkedQueue<Connection>();
+    }
+
+    /**
+     * Binds the server to an address and starts the selector thread.
+     *
+     * @param address address, with port 0 for any free port
+     * @throws IOException if the address cannot be bound
+     */
+    public void start(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        selectorThread = new Thread(this::select, "ledger-server-selector");
+        selectorThread.start();
+    }
+
+    /**
+     * get port
+     *
+     * @return {@link int} the port the server is bound to
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections, closes every connection, waits for the commands already
+     * received to finish, and writes any committed blocks still buffered by the ledger's block store.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    public void close() throws InterruptedException, LedgerException {
+        closed = true;
+        selector.wakeup();
+        selectorThread.join();
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        ledger.sync();
+    }
+
+    /**
+     * Runs the selector loop until the server is closed.
+     */
+    private void select() {
+        try {
+            while (!closed) {
+                selector.select();
+                // connections with responses to write, or ready to be read again
+                Connection connection;
+                while ((connection = ready.poll()) != null) {
+                    connection.updateInterest();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection selected = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                selected.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                selected.write();
+                            }
+                        }
+                    } catch (IOException e) {
+                        // the client has gone away
+                        if (key.attachment() != null) {
+                            ((Connection) key.attachment()).close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // the server has been closed
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // already closed
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    /**
+     * Accepts a pending connection.
+     *
+     * @throws IOException if the connection cannot be set up
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    /**
+     * A client connection and its session.
+     * <p>
+     * The channel, read buffer and selection key are used only by the selector thread. The
+     * queue of commands, the queue of responses and the connection's flags are shared with the
+     * worker executing the connection's commands, and guarded by the connection's monitor.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer;
+        private byte[] line;
+        private int lineLength;
+        private SelectionKey key;
+
+        private final ArrayDeque<String> commands;
+        private final ArrayDeque<ByteBuffer> responses;
+        private boolean executing;
+        private boolean inputClosed;
+
+        // written only by the worker executing the connection's commands
+        private final ByteArrayOutputStream output;
+        private final PrintWriter writer;
+        private final CommandProcessor processor;
+        private int commandNumber;
+
+        /**
+         * Class Constructor.
+         *
+         * @param channel channel
+         */
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.readBuffer = ByteBuffer.allocate(ScriptRunner.BUFFER_SIZE);
+            this.line = new byte[256];
+            this.commands = new ArrayDeque<String>();
+            this.responses = new ArrayDeque<ByteBuffer>();
+            this.output = new ByteArrayOutputStream(ScriptRunner.BUFFER_SIZE);
+            this.writer = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(output, StandardCharsets.UTF_8), ScriptRunner.BUFFER_SIZE));
+            this.processor = new CommandProcessor(writer, ledger, fileCommands);
+        }
+
+        /**
+         * Reads what the client has sent, queueing each complete line as a command.
+         *
+         * @throws IOException if the channel fails, or a line is too long
+         */
+        void read() throws IOException {
+            int count = channel.read(readBuffer);
+            if (count < 0) {
+                synchronized (this) {
+                    inputClosed = true;
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                closeIfDone();
+                return;
+            }
+            readBuffer.flip();
+            ArrayList<String> received = new ArrayList<String>();
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                    received.add(new String(line, 0, length, StandardCharsets.UTF_8));
+                    lineLength = 0;
+                } else {
+                    if (lineLength == line.length) {
+                        if (lineLength == MAX_LINE_BYTES) {
+                            throw new IOException("command line too long");
+                        }
+                        line = Arrays.copyOf(line, Math.min(lineLength * 2, MAX_LINE_BYTES));
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            readBuffer.clear();
+            if (received.isEmpty()) {
+                return;
+            }
+            boolean schedule;
+            synchronized (this) {
+                commands.addAll(received);
+                schedule = !executing;
+                executing = true;
+                if (commands.size() >= MAX_PENDING_COMMANDS) {
+                    // stop reading until the worker has caught up
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+            }
+            if (schedule) {
+                workers.execute(this::execute);
+            }
+        }
+
+        /**
+         * Executes the queued commands in order on a worker thread, until none are left,
+         * queueing the responses to each group of commands as one buffer.
+         */
+        void execute() {
+            while (true) {
+                ArrayDeque<String> batch;
+                synchronized (this) {
+                    if (commands.isEmpty()) {
+                        executing = false;
+                        break;
+                    }
+                    batch = new ArrayDeque<String>(commands);
+                    commands.clear();
+                }
+                for (String command : batch) {
+                    try {
+                        processor.processScriptCommand(CommandProcessor.parse(command, ++commandNumber));
+                    } catch (RuntimeException e) {
+                        // report commands the processor does not handle, and carry on with the session
+                        writer.println("Error: " + e);
+                    }
+                    writer.println(END_OF_RESPONSE);
+                }
+                writer.flush();
+                ByteBuffer response = ByteBuffer.wrap(output.toByteArray());
+                output.reset();
+                synchronized (this) {
+                    responses.add(response);
+                }
+                ready.add(this);
+                selector.wakeup();
+            }
+            // let the selector close the connection if the client has finished
+            ready.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Sets the connection's interest in reading and writing from its queues.
+         * Called on the selector thread.
+         */
+        void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            int ops;
+            synchronized (this) {
+                ops = (inputClosed || commands.size() >= MAX_PENDING_COMMANDS ? 0 : SelectionKey.OP_READ)
+                        | (responses.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+            }
+            key.interestOps(ops);
+            closeIfDone();
+        }
+
+        /**
+         * Writes as many queued responses as the channel accepts.
+         *
+         * @throws IOException if the channel fails
+         */
+        void write() throws IOException {
+            ByteBuffer[] pending;
+            synchronized (this) {
+                pending = responses.toArray(new ByteBuffer[0]);
+            }
+            channel.write(pending);
+            synchronized (this) {
+                while (!responses.isEmpty() && !responses.peek().hasRemaining()) {
+                    responses.poll();
+                }
+            }
+            updateInterest();
+        }
+
+        /**
+         * Closes the connection once the client has finished sending, and every
+         * response has been written.
+         */
+        void closeIfDone() {
+            boolean done;
+            synchronized (this) {
+                done = inputClosed && !executing && commands.isEmpty() && responses.isEmpty();
+            }
+            if (done) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the connection.
+         */
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    /**
+     * Starts a ledger server and stops it, syncing the ledger, when the process shuts down.
+     * <p>
+     * Usage: LedgerServer [--bind address] [--allow-file-commands] [port] [block-store-directory]
+     *
+     * @param args optional {@code --bind address} to listen on instead of the loopback address,
+     *             optional {@code --allow-file-commands} to accept commands that read or write server
+     *             files, the port (default {@value #DEFAULT_PORT}) and a block store directory to open
+     *             the ledger from; without a directory a new in-memory ledger is created
+     * @throws Throwable if the ledger cannot be opened or the server cannot be started
+     */
+    public static void main(String[] args) throws Throwable {
+        InetAddress address = InetAddress.getLoopbackAddress();
+        boolean fileCommands = false;
+        int next = 0;
+        while (next < args.length && args[next].startsWith("--")) {
+            if (args[next].equals("--bind") && next + 1 < args.length) {
+                address = InetAddress.getByName(args[next + 1]);
+                next += 2;
+            } else if (args[next].equals("--allow-file-commands")) {
+                fileCommands = true;
+                next++;
+            } else {
+                throw new IllegalArgumentException("usage: LedgerServer [--bind address] [--allow-file-commands]"
+                        + " [port] [block-store-directory]");
+            }
+        }
+        int port = args.length > next ? Integer.parseInt(args[next]) : DEFAULT_PORT;
+        Ledger ledger;
+        if (args.length > next + 1) {
+            ledger = Ledger.open(Paths.get(args[next + 1]));
+        } else {
+            ledger = new Ledger("server", "ledger server", "server");
+            ledger.fundLedger();
+        }
+        LedgerServer server = new LedgerServer(ledger, Runtime.getRuntime().availableProcessors(), fileCommands);
+        server.start(new InetSocketAddress(address, port));
+        // write the buffered blocks when the server is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (InterruptedException | LedgerException e) {
+                System.err.println(e);
+            }
+        }, "ledger-server-shutdown"));
+        System.out.println("Serving ledger " + ledger.getName() + " on " + address.getHostAddress()
+                + " port " + server.getPort());
+    }
+}
@@ -0,0 +1,99 @@
+package com.cscie97.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads committed blocks and transactions straight from memory-mapped block store segments.
+ * <p>
+ * Each segment is mapped read-only on first use, and mapped again if a record lies beyond
+ * the end of the current mapping because the segment has grown. Records are decoded lazily:
+ * a single transaction is decoded through the record's offset table without decoding the
+ * rest of its block. The operating system pages segment data in and out as needed, so
+ * historical blocks do not have to be kept on the heap.
+ * The reader may be used by concurrent threads.
+ *
+ * @see BlockStore
+ * @see BlockCodec
+ * @author austinhigh
+ */
+public class MappedBlockReader {
+
+    private ConcurrentHashMap<Path, MappedByteBuffer> mappings;
+
+    /**
+     * Class Constructor.
+     */
+    public MappedBlockReader() {
+        this.mappings = new ConcurrentHashMap<Path, MappedByteBuffer>();
+    }
+
+    /**
+     * Decodes the block whose record starts at the given offset of a segment.
+     *
+     * @param segment segment path
+     * @param offset offset of the record's frame in the segment
+     * @return {@link Block}
+     * @see Block
+     * @throws IOException if the segment cannot be mapped
+     */
+    public Block readBlock(Path segment, int offset) throws IOException {
+        MappedByteBuffer mapping = map(segment, offset);
+        int length = mapping.getInt(offset);
+        ByteBuffer record = mapping.duplicate();
+        record.limit(offset + BlockStore.FRAME_HEADER + length).position(offset + BlockStore.FRAME_HEADER);
+        return BlockCodec.decode(record);
+    }
+
+    /**
+     * Decodes one transaction from the block whose record starts at the given offset of a segment.
+     *
+     * @param segment segment path
+     * @param offset offset of the record's frame in the segment
+     * @param slot index of the transaction within the block
+     * @return {@link Transaction}
+     * @see Transaction
+     * @throws IOException if the segment cannot be mapped
+     */
+    public Transaction readTransaction(Path segment, int offset, int slot) throws IOException {
+        MappedByteBuffer mapping = map(segment, offset);
+        return BlockCodec.decodeTransaction(mapping, offset + BlockStore.FRAME_HEADER, slot);
+    }
+
+    /**
+     * Drops all mappings, for example once segments have been truncated.
+     */
+    public void clear() {
+        mappings.clear();
+    }
+
+    /**
+     * Returns a mapping of the segment that covers the record at the given offset.
+     *
+     * @param segment segment path
+     * @param offset offset of the record's frame
+     * @return {@link MappedByteBuffer}
+     * @throws IOException if the segment cannot be mapped
+     */
+    private MappedByteBuffer map(Path segment, int offset) throws IOException {
+        MappedByteBuffer mapping = mappings.get(segment);
+        if (mapping != null && offset + BlockStore.FRAME_HEADER <= mapping.capacity()
+                && offset + BlockStore.FRAME_HEADER + mapping.getInt(offset) <= mapping.capacity()) {
+            return mapping;
+        }
+        // map, or map again now that the segment has grown
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (offset + BlockStore.FRAME_HEADER > mapping.capacity()) {
+            throw new IOException("record offset " + offset + " is past the end of " + segment);
+        }
+        mappings.put(segment, mapping);
+        return mapping;
+    }
+}
@@ -0,0 +1,124 @@
+package com.cscie97.ledger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Proves that a transaction is included in a block without the rest of the block's transactions.
+ * <p>
+ * Contains the index of the transaction's leaf in the block's merkle tree and the sibling
+ * digest at each level from the leaf up to the root, so the proof is O(log n) in the number
+ * of transactions in the block. The proof is verified by hashing the transaction, combining it
+ * with each sibling in turn, and comparing the result with the merkle root in the block header.
+ *
+ * @see MerkleTree
+ * @see Block
+ * @author austinhigh
+ */
+public class MerkleProof {
+
+    private static final int HASH = Sha256.DIGEST_LENGTH;
+
+    private int blockNumber;
+    private int leafIndex;
+    private byte[] siblings;
+
+    /**
+     * Class Constructor.
+     *
+     * @param leafIndex index of the leaf in the tree
+     * @param siblings sibling digests, leaf level first, as consecutive 32 byte digests
+     */
+    public MerkleProof(int leafIndex, byte[] siblings) {
+        this.leafIndex = leafIndex;
+        this.siblings = siblings;
+    }
+
+    /**
+     * Verifies that the transaction is included in a block with the given merkle root.
+     *
+     * @param transaction transaction
+     * @param merkleRoot merkle root from the block header
+     * @return {@link boolean}
+     */
+    public boolean verify(Transaction transaction, String merkleRoot) {
+        byte[] leaf = Sha256.digest(transaction.getConcat().getBytes(StandardCharsets.UTF_8));
+        return verify(leaf, Sha256.fromHex(merkleRoot));
+    }
+
+    /**
+     * Verifies that the leaf digest is included in a tree with the given root.
+     *
+     * @param leaf leaf digest
+     * @param root root digest
+     * @return {@link boolean}
+     */
+    public boolean verify(byte[] leaf, byte[] root) {
+        byte[] node = Arrays.copyOf(leaf, HASH);
+        int index = leafIndex;
+        for (int offset = 0; offset < siblings.length; offset += HASH) {
+            if (index % 2 == 0) {
+                // node is a left child
+                Sha256.digest(node, 0, HASH, siblings, offset, HASH, node, 0);
+            } else {
+                // node is a right child
+                Sha256.digest(siblings, offset, HASH, node, 0, HASH, node, 0);
+            }
+            index /= 2;
+        }
+        return Arrays.equals(node, root);
+    }
+
+    /**
+     * to string
+     *
+     * @return {@link String}
+     * @see String
+     */
+    @Override
+    public String toString() {
+        StringBuilder proof = new StringBuilder("Block Number: " + blockNumber +
+                "\nLeaf Index: " + leafIndex +
+                "\nSiblings:");
+        for (int offset = 0; offset < siblings.length; offset += HASH) {
+            proof.append("\n  ").append(Sha256.toHex(siblings, offset, HASH));
+        }
+        return proof.toString();
+    }
+
+    /**
+     * get block number
+     *
+     * @return {@link int}
+     */
+    public int getBlockNumber() {
+        return this.blockNumber;
+    }
+
+    /**
+     * set block number
+     *
+     * @param blockNumber blockNumber
+     */
+    public void setBlockNumber(int blockNumber) {
+        this.blockNumber = blockNumber;
+    }
+
+    /**
+     * get leaf index
+     *
+     * @return {@link int}
+     */
+    public int getLeafIndex() {
+        return this.leafIndex;
+    }
+
+    /**
+     * get siblings
+     *
+     * @return {@link byte[]}
+     */
+    public byte[] getSiblings() {
+        return this.siblings;
+    }
+}
@@ -1,15 +1,21 @@
 package com.cscie97.ledger;
 
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  *  Offers encryption services to Ledger class.
  *
  *  createMerkleTree() : Calculates merkle root of given transaction list
- *  getSha() : Encodes strings using SHA256 encryption
+ *  buildLevels() : Calculates and retains every level of the merkle tree
+ *  createProof() : Creates an inclusion proof for a leaf from the retained levels
+ *  getSha() : Encodes strings using SHA256 encryption (see Sha256)
+ *
+ *  The merkle root is computed iteratively over a single flat buffer of 32 byte digests.
+ *  Each leaf is the SHA256 digest of a transaction, and each level is reduced in place by
+ *  hashing pairs of nodes into the front of the buffer. If a level has an odd number of nodes,
+ *  the last node is paired with itself.
  *
  *   Title: MerkleTree
  *   Author: Vinay Prabhu
@@ -19,83 +25,203 @@ import java.util.ArrayList;
  */
 public class MerkleTree {
 
+    private static final int HASH = Sha256.DIGEST_LENGTH;
+
+    // reusable leaf buffer for each thread, grown as needed
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[HASH * 16]);
+
     /**
-     * Helper function for the recursive merkleTree() method.
+     * Calculates the merkle root of the given list of transaction strings.
      *
      * @param transactions list of transactions
      * @return {@link String}
      * @see String
      */
-    public static String createMerkleTree(ArrayList<String> transactions) {
-        ArrayList<String> merkleRoot = merkleTree(transactions);
-        return merkleRoot.get(0);
+    public static String createMerkleTree(List<String> transactions) {
+        byte[] buffer = leafBuffer(transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            // hash each transaction into its leaf slot
+            hashLeaf(transactions.get(i), buffer, i * HASH);
+        }
+        reduce(buffer, transactions.size());
+        return Sha256.toHex(buffer, 0, HASH);
     }
 
     /**
-     * Recursively creates a merkle tree, hashes values using getSha(), and returns the merkle root.
+     * Calculates every level of the merkle tree for the given list of transaction strings.
+     * Level 0 holds the leaf digests and the last level holds the root; each level is a flat
+     * array of consecutive 32 byte digests.
      *
-     * @param hashList hashList
-     * @return {@link ArrayList}
-     * @see ArrayList
-     * @see String
+     * @param transactions list of transactions
+     * @return {@link byte[][]}
+     */
+    public static byte[][] buildLevels(List<String> transactions) {
+        int count = transactions.size();
+        if (count == 0) {
+            // an empty tree has a root of 32 zero bytes
+            return new byte[][] { new byte[HASH] };
+        }
+        byte[][] levels = new byte[levelCount(count)][];
+        levels[0] = new byte[count * HASH];
+        for (int i = 0; i < count; i++) {
+            hashLeaf(transactions.get(i), levels[0], i * HASH);
+        }
+        for (int k = 1; k < levels.length; k++) {
+            int children = levels[k - 1].length / HASH;
+            int parents = (children + 1) / 2;
+            levels[k] = new byte[parents * HASH];
+            hashParents(levels[k - 1], children, levels[k], 0, parents);
+        }
+        return levels;
+    }
+
+    /**
+     * Returns the root of a tree from its retained levels.
+     *
+     * @param levels levels
+     * @return {@link byte[]}
+     */
+    public static byte[] root(byte[][] levels) {
+        return Arrays.copyOf(levels[levels.length - 1], HASH);
+    }
+
+    /**
+     * Creates an inclusion proof for the leaf at the given index from the retained levels.
+     * The proof holds the sibling of the leaf and of each of its ancestors below the root.
+     *
+     * @param levels levels
+     * @param leafIndex index of the leaf
+     * @return {@link MerkleProof}
+     * @see MerkleProof
      */
-    private static ArrayList<String> merkleTree(ArrayList<String> hashList){
-        // Return the Merkle Root
-        if(hashList.size() == 1){
-            return hashList;
+    public static MerkleProof createProof(byte[][] levels, int leafIndex) {
+        int count = levels[0].length / HASH;
+        if (leafIndex < 0 || leafIndex >= count) {
+            throw new IllegalArgumentException("leaf index out of range");
         }
-        ArrayList<String> parentHashList=new ArrayList<>();
-        // hash the leaf transaction pair to get parent transaction
-        for(int i=0; i<hashList.size(); i+=2){
-            // if odd number of transactions, add the last transaction again
-            if((hashList.size() % 2 == 1) && (i == hashList.size() - 1)) {
-                String lastHash = hashList.get(hashList.size() - 1);
-                String hashedString = getSha(lastHash.concat(lastHash));
-                parentHashList.add(hashedString);
-                break;
-            }else {
-                String hashedString = getSha(hashList.get(i).concat(hashList.get(i + 1)));
-                parentHashList.add(hashedString);
+        byte[] siblings = new byte[(levels.length - 1) * HASH];
+        int index = leafIndex;
+        for (int k = 0; k < levels.length - 1; k++) {
+            int nodes = levels[k].length / HASH;
+            int sibling = (index % 2 == 0) ? index + 1 : index - 1;
+            if (sibling >= nodes) {
+                // the last node of an odd level is paired with itself
+                sibling = index;
             }
+            System.arraycopy(levels[k], sibling * HASH, siblings, k * HASH, HASH);
+            index /= 2;
         }
-        return merkleTree(parentHashList);
+        return new MerkleProof(leafIndex, siblings);
     }
 
     /**
-     * Returns SHA256 hash of a string.
+     * Returns the number of levels, including the leaves and root, of a tree with the given number of leaves.
      *
-     * @param input input
-     * @return {@link String}
-     * @see String
+     * @param count number of leaves
+     * @return {@link int}
      */
-    public static String getSha(String input){
-        //String sha256hex = org.apache.commons.codec.digest.DigestUtils.sha256Hex(concat);
-        {
-            try {
-                // static getInstance method is called with hashing SHA
-                MessageDigest md = MessageDigest.getInstance("SHA-256");
+    static int levelCount(int count) {
+        return 33 - Integer.numberOfLeadingZeros(Math.max(count, 1) - 1);
+    }
 
-                // digest() method called
-                // to calculate message digest of an input
-                // and return array of byte
-                byte[] messageDigest = md.digest(input.getBytes());
+    /**
+     * Hashes a range of parent nodes from the child level into the parent level.
+     *
+     * @param children child level digests
+     * @param childCount number of digests in the child level
+     * @param parents parent level digests
+     * @param from index of first parent to hash
+     * @param to index after last parent to hash
+     */
+    static void hashParents(byte[] children, int childCount, byte[] parents, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int left = 2 * i * HASH;
+            // if odd number of nodes, pair the last node with itself
+            int right = (2 * i + 1 < childCount) ? left + HASH : left;
+            Sha256.digest(children, left, HASH, children, right, HASH, parents, i * HASH);
+        }
+    }
 
-                // convert byte array into signum representation
-                BigInteger no = new BigInteger(1, messageDigest);
+    /**
+     * Hashes a transaction string into a leaf digest.
+     *
+     * @param transaction transaction string
+     * @param buffer output buffer
+     * @param offset byte offset of the leaf in the output buffer
+     */
+    static void hashLeaf(String transaction, byte[] buffer, int offset) {
+        byte[] bytes = transaction.getBytes(StandardCharsets.UTF_8);
+        Sha256.digest(bytes, 0, bytes.length, buffer, offset);
+    }
 
-                // convert message digest into hex value
-                String hashText = no.toString(16);
-                while (hashText.length() < 32) {
-                    hashText = "0" + hashText;
-                }
-                return hashText;
-            }
-            // for specifying wrong message digest algorithms
-            catch (NoSuchAlgorithmException e) {
-                System.out.println("Exception thrown"
-                        + " for incorrect algorithm: " + e);
-                return null;
+    /**
+     * Returns a leaf buffer for the current thread large enough to hold the given number of digests.
+     * The buffer is reused by later calls on the same thread.
+     *
+     * @param leafCount number of leaves
+     * @return {@link byte[]}
+     */
+    public static byte[] leafBuffer(int leafCount) {
+        byte[] buffer = BUFFER.get();
+        int required = Math.max(leafCount, 1) * HASH;
+        if (buffer.length < required) {
+            buffer = new byte[Math.max(required, buffer.length * 2)];
+            BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Reduces a buffer of leaf digests to the merkle root, in place.
+     * On return the root occupies the first 32 bytes of the buffer.
+     * An empty tree has a root of 32 zero bytes.
+     *
+     * @param buffer buffer holding count consecutive 32 byte digests
+     * @param count number of leaf digests
+     */
+    public static void reduce(byte[] buffer, int count) {
+        if (count == 0) {
+            for (int i = 0; i < HASH; i++) {
+                buffer[i] = 0;
             }
+            return;
+        }
+        while (count > 1) {
+            count = reduceLevel(buffer, 0, count);
         }
     }
+
+    /**
+     * Hashes each pair of nodes in a level into the front of the level, in place.
+     * Node i of the parent level is written over node i of the child level, which has already
+     * been consumed, so the reduction needs no extra space.
+     *
+     * @param buffer buffer holding the level's digests
+     * @param offset byte offset of the first digest in the level
+     * @param count number of digests in the level
+     * @return {@link int} number of digests in the parent level
+     */
+    static int reduceLevel(byte[] buffer, int offset, int count) {
+        int parents = (count + 1) / 2;
+        for (int i = 0; i < parents; i++) {
+            int left = offset + 2 * i * HASH;
+            // if odd number of nodes, pair the last node with itself
+            int right = (2 * i + 1 < count) ? left + HASH : left;
+            Sha256.digest(buffer, left, HASH, buffer, right, HASH, buffer, offset + i * HASH);
+        }
+        return parents;
+    }
+
+    /**
+     * Returns SHA256 hash of a string, as 64 lower case hex characters.
+     * The string is encoded as UTF-8 before hashing.
+     *
+     * @param input input
+     * @return {@link String}
+     * @see String
+     * @see Sha256
+     */
+    public static String getSha(String input){
+        return Sha256.toHex(Sha256.digest(input.getBytes(StandardCharsets.UTF_8)));
+    }
 }
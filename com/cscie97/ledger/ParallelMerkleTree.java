@@ -0,0 +1,199 @@
+package com.cscie97.ledger;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds merkle roots and levels for large blocks on a ForkJoinPool.
+ * <p>
+ * The leaves are split into ranges aligned to powers of two, so that each range is exactly
+ * one subtree of the sequential tree. Ranges are hashed and reduced concurrently, then
+ * their subtree roots are combined pairwise. A subtree at the right edge of the tree with
+ * fewer leaves than its span is reduced through the full number of levels, pairing its
+ * last node with itself, which gives exactly the same root as {@link MerkleTree}.
+ * When every level is retained, the nodes of each large level are hashed concurrently instead.
+ * Trees with fewer leaves than the threshold are built sequentially.
+ *
+ * @see MerkleTree
+ * @author austinhigh
+ */
+public class ParallelMerkleTree {
+
+    /**
+     * Default number of leaves below which trees are built sequentially.
+     */
+    public static final int DEFAULT_THRESHOLD = 2048;
+
+    private static final int HASH = Sha256.DIGEST_LENGTH;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * Class Constructor using the common pool and default threshold.
+     */
+    public ParallelMerkleTree() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Class Constructor.
+     *
+     * @param pool pool used to hash subtrees
+     * @param threshold number of leaves below which work is done sequentially
+     */
+    public ParallelMerkleTree(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = Math.max(threshold, 2);
+    }
+
+    /**
+     * Calculates the merkle root of the given list of transaction strings.
+     *
+     * @param transactions list of transactions
+     * @return {@link String}
+     * @see String
+     */
+    public String createMerkleTree(List<String> transactions) {
+        int count = transactions.size();
+        if (count < threshold) {
+            // small trees are not worth splitting
+            return MerkleTree.createMerkleTree(transactions);
+        }
+        // each task writes only its own range, so one buffer is shared by all tasks
+        byte[] buffer = new byte[count * HASH];
+        pool.invoke(new SubtreeTask(transactions, buffer, 0, count, MerkleTree.levelCount(count) - 1));
+        return Sha256.toHex(buffer, 0, HASH);
+    }
+
+    /**
+     * Calculates every level of the merkle tree for the given list of transaction strings,
+     * hashing the nodes of each large level concurrently.
+     *
+     * @param transactions list of transactions
+     * @return {@link byte[][]}
+     * @see MerkleTree#buildLevels(List)
+     */
+    public byte[][] buildLevels(List<String> transactions) {
+        int count = transactions.size();
+        if (count < threshold) {
+            // small trees are not worth splitting
+            return MerkleTree.buildLevels(transactions);
+        }
+        byte[][] levels = new byte[MerkleTree.levelCount(count)][];
+        levels[0] = new byte[count * HASH];
+        pool.invoke(new LevelTask(transactions, null, 0, levels[0], 0, count));
+        for (int k = 1; k < levels.length; k++) {
+            int children = levels[k - 1].length / HASH;
+            int parents = (children + 1) / 2;
+            levels[k] = new byte[parents * HASH];
+            if (parents < threshold) {
+                MerkleTree.hashParents(levels[k - 1], children, levels[k], 0, parents);
+            } else {
+                pool.invoke(new LevelTask(null, levels[k - 1], children, levels[k], 0, parents));
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * get threshold
+     *
+     * @return {@link int}
+     */
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    /**
+     * Hashes a range of nodes in one level of the tree: leaves from the transactions
+     * when there is no child level, otherwise parents from the child level.
+     */
+    private class LevelTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> transactions;
+        private final byte[] children;
+        private final int childCount;
+        private final byte[] level;
+        private final int from;
+        private final int to;
+
+        LevelTask(List<String> transactions, byte[] children, int childCount, byte[] level, int from, int to) {
+            this.transactions = transactions;
+            this.children = children;
+            this.childCount = childCount;
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                if (children == null) {
+                    for (int i = from; i < to; i++) {
+                        MerkleTree.hashLeaf(transactions.get(i), level, i * HASH);
+                    }
+                } else {
+                    MerkleTree.hashParents(children, childCount, level, from, to);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new LevelTask(transactions, children, childCount, level, from, mid),
+                    new LevelTask(transactions, children, childCount, level, mid, to));
+        }
+    }
+
+    /**
+     * Computes the root of the subtree spanning 2^levels leaves starting at a leaf index,
+     * of which only the leaves before the end index exist. The subtree root is written to
+     * the slot of its first leaf.
+     */
+    private class SubtreeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> transactions;
+        private final byte[] buffer;
+        private final int from;
+        private final int to;
+        private final int levels;
+
+        SubtreeTask(List<String> transactions, byte[] buffer, int from, int to, int levels) {
+            this.transactions = transactions;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.levels = levels;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                // hash the leaves in this range, then reduce through every level of the subtree
+                for (int i = from; i < to; i++) {
+                    MerkleTree.hashLeaf(transactions.get(i), buffer, i * HASH);
+                }
+                int count = to - from;
+                for (int level = 0; level < levels; level++) {
+                    count = MerkleTree.reduceLevel(buffer, from * HASH, count);
+                }
+                return;
+            }
+            int mid = from + (1 << (levels - 1));
+            SubtreeTask left = new SubtreeTask(transactions, buffer, from, Math.min(mid, to), levels - 1);
+            if (mid < to) {
+                invokeAll(left, new SubtreeTask(transactions, buffer, mid, to, levels - 1));
+                Sha256.digest(buffer, from * HASH, HASH, buffer, mid * HASH, HASH, buffer, from * HASH);
+            } else {
+                // no right subtree, pair the left subtree root with itself
+                left.compute();
+                Sha256.digest(buffer, from * HASH, HASH, buffer, from * HASH, HASH, buffer, from * HASH);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.cscie97.ledger;
+
+import java.util.ArrayList;
+
+/**
+ * A line of a command script that has been split into fields, ready to be executed by a
+ * {@link CommandProcessor}. A process-transaction line also carries its Transaction, built
+ * when the line was parsed, so parsing can run ahead of execution on other threads.
+ *
+ * @see CommandProcessor
+ * @see ScriptRunner
+ * @author austinhigh
+ */
+public final class ParsedCommand {
+
+    private final String line;
+    private final int lineNumber;
+    private final ArrayList<String> fields;
+    private final Transaction transaction;
+
+    /**
+     * Class Constructor.
+     *
+     * @param line text of the line
+     * @param lineNumber number of the line in its script
+     * @param fields fields of the line
+     * @param transaction transaction of a well formed process-transaction line, otherwise null
+     */
+    public ParsedCommand(String line, int lineNumber, ArrayList<String> fields, Transaction transaction) {
+        this.line = line;
+        this.lineNumber = lineNumber;
+        this.fields = fields;
+        this.transaction = transaction;
+    }
+
+    /**
+     * get line
+     *
+     * @return {@link String}
+     * @see String
+     */
+    public String getLine() {
+        return this.line;
+    }
+
+    /**
+     * get line number
+     *
+     * @return {@link int}
+     */
+    public int getLineNumber() {
+        return this.lineNumber;
+    }
+
+    /**
+     * get fields
+     *
+     * @return {@link ArrayList}
+     * @see ArrayList
+     * @see String
+     */
+    public ArrayList<String> getFields() {
+        return this.fields;
+    }
+
+    /**
+     * get transaction
+     *
+     * @return {@link Transaction} or null if the line is not a well formed process-transaction command
+     * @see Transaction
+     */
+    public Transaction getTransaction() {
+        return this.transaction;
+    }
+}
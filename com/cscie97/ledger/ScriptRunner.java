@@ -0,0 +1,277 @@
+package com.cscie97.ledger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streams a command script of any length through a {@link CommandProcessor}.
+ * <p>
+ * The script is read from a file channel, or from standard input, through a large buffer, and
+ * each line is split by the CommandProcessor's single pass tokenizer. Command output goes to
+ * a large buffered writer over standard output, which is flushed only when the input has no
+ * more lines ready and when the script ends, so replaying a long script costs little more than
+ * the ledger work it performs, while an interactive session still sees each result.
+ * <p>
+ * With parser threads, the script is replayed as a pipeline. A reader thread reads the script
+ * in chunks of lines, the parser threads split each chunk into {@link ParsedCommand}s, building
+ * the Transaction of every process-transaction line, and the parsed chunks pass in script order
+ * through a bounded queue to the calling thread, which executes each command in turn. Commands
+ * are applied to the ledger in exactly the order of the script, errors are reported with their
+ * line numbers as before, and the reader stalls when parsing runs too far ahead of execution.
+ * <p>
+ * Usage: ScriptRunner [--parsers count] [script]
+ * Reads the script at the given path, or standard input if the path is "-" or not given.
+ * With --parsers, the script is replayed through the given number of parser threads.
+ *
+ * @see CommandProcessor
+ * @author austinhigh
+ */
+public class ScriptRunner {
+
+    /**
+     * Size in characters of the input and output buffers.
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Number of lines read and parsed together when replaying with parser threads.
+     */
+    public static final int CHUNK_LINES = 1024;
+
+    // marks the end of the script in the queue of parsed chunks
+    private static final Future<ParsedCommand[]> END = CompletableFuture.completedFuture(null);
+
+    private final CommandProcessor processor;
+    private final int parsers;
+
+    /**
+     * Class Constructor, parsing and executing each line in turn on the calling thread.
+     *
+     * @param processor command processor receiving each line of the script
+     */
+    public ScriptRunner(CommandProcessor processor) {
+        this(processor, 0);
+    }
+
+    /**
+     * Class Constructor.
+     *
+     * @param processor command processor receiving each line of the script
+     * @param parsers number of parser threads, or 0 to parse each line on the calling thread
+     */
+    public ScriptRunner(CommandProcessor processor, int parsers) {
+        if (parsers < 0) {
+            throw new IllegalArgumentException("parsers must not be negative");
+        }
+        this.processor = processor;
+        this.parsers = parsers;
+    }
+
+    /**
+     * Runs the script at the given path.
+     *
+     * @param script script path
+     * @throws IOException if the script cannot be read
+     */
+    public void run(Path script) throws IOException {
+        try (BufferedReader reader = open(script)) {
+            run(reader);
+        }
+    }
+
+    /**
+     * Runs a script read from a stream, such as standard input.
+     *
+     * @param in script stream
+     * @throws IOException if the script cannot be read
+     */
+    public void run(InputStream in) throws IOException {
+        run(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    /**
+     * Runs a script, through the parser threads if there are any.
+     *
+     * @param reader script
+     * @throws IOException if the script cannot be read
+     */
+    private void run(BufferedReader reader) throws IOException {
+        if (parsers == 0) {
+            processor.processCommands(reader);
+        } else {
+            replay(reader);
+        }
+    }
+
+    /**
+     * Replays a script through the parser threads, executing the parsed commands
+     * in script order on the calling thread.
+     *
+     * @param reader script
+     * @throws IOException if the script cannot be read
+     */
+    private void replay(BufferedReader reader) throws IOException {
+        ExecutorService parserPool = Executors.newFixedThreadPool(parsers, runnable -> {
+            Thread thread = new Thread(runnable, "script-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // chunks wait here in script order, each as soon as its parsing has been started
+        ArrayBlockingQueue<Future<ParsedCommand[]>> parsed = new ArrayBlockingQueue<Future<ParsedCommand[]>>(4 * parsers);
+        Thread readerThread = new Thread(() -> read(reader, parserPool, parsed), "script-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        try {
+            while (true) {
+                Future<ParsedCommand[]> next = parsed.poll();
+                if (next == null || !next.isDone()) {
+                    // execution has caught up with reading or parsing, let the output be seen
+                    processor.flush();
+                    if (next == null) {
+                        next = parsed.take();
+                    }
+                }
+                ParsedCommand[] chunk = next.get();
+                if (chunk == null) {
+                    break;
+                }
+                for (ParsedCommand command : chunk) {
+                    processor.processScriptCommand(command);
+                }
+            }
+            processor.endScript();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("script replay interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            readerThread.interrupt();
+            parserPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads a script in chunks of up to CHUNK_LINES lines, starting to parse each chunk on the
+     * parser pool and queueing it in script order. Runs on the reader thread; a read error is queued in place
+     * of the next chunk.
+     *
+     * @param reader script
+     * @param parserPool parser threads
+     * @param parsed queue of parsed chunks
+     */
+    private static void read(BufferedReader reader, ExecutorService parserPool,
+                             ArrayBlockingQueue<Future<ParsedCommand[]>> parsed) {
+        try {
+            int lineNumber = 0;
+            boolean end = false;
+            while (!end) {
+                String[] lines = new String[CHUNK_LINES];
+                int count = 0;
+                // a chunk also ends where the input has nothing more ready, such as an interactive pause
+                while (count < CHUNK_LINES && (count == 0 || reader.ready())) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        end = true;
+                        break;
+                    }
+                    lines[count++] = line;
+                }
+                if (count > 0) {
+                    int firstLine = lineNumber + 1;
+                    int chunkLines = count;
+                    parsed.put(parserPool.submit(() -> {
+                        ParsedCommand[] chunk = new ParsedCommand[chunkLines];
+                        for (int i = 0; i < chunkLines; i++) {
+                            chunk[i] = CommandProcessor.parse(lines[i], firstLine + i);
+                        }
+                        return chunk;
+                    }));
+                    lineNumber += count;
+                }
+            }
+            parsed.put(END);
+        } catch (IOException e) {
+            CompletableFuture<ParsedCommand[]> failed = new CompletableFuture<ParsedCommand[]>();
+            failed.completeExceptionally(e);
+            try {
+                parsed.put(failed);
+            } catch (InterruptedException stopped) {
+                // the replay has stopped
+            }
+        } catch (InterruptedException e) {
+            // the replay has stopped
+        }
+    }
+
+    /**
+     * Opens a script file for reading through a large buffer over its file channel.
+     *
+     * @param script script path
+     * @return {@link BufferedReader}
+     * @throws IOException if the script cannot be opened
+     */
+    public static BufferedReader open(Path script) throws IOException {
+        FileChannel channel = FileChannel.open(script, StandardOpenOption.READ);
+        return new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE),
+                BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a command processor writing to standard output through a large buffer.
+     *
+     * @return {@link CommandProcessor}
+     */
+    public static CommandProcessor bufferedProcessor() {
+        return new CommandProcessor(new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), BUFFER_SIZE), false));
+    }
+
+    /**
+     * Runs a command script, writing the output to standard output.
+     * <p>
+     * Usage: ScriptRunner [--parsers N] [script-file | -]
+     *
+     * @param args optional {@code --parsers N} giving the number of threads that parse commands
+     *             ahead of execution, followed by the script path; the script is read from standard
+     *             input if the path is "-" or missing
+     * @throws IOException if the script cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        int parsers = 0;
+        int next = 0;
+        if (args.length > 1 && args[0].equals("--parsers")) {
+            parsers = Integer.parseInt(args[1]);
+            next = 2;
+        }
+        ScriptRunner runner = new ScriptRunner(bufferedProcessor(), parsers);
+        if (args.length == next || args[next].equals("-")) {
+            runner.run(System.in);
+        } else {
+            runner.run(Paths.get(args[next]));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.cscie97.ledger;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Offers SHA-256 hashing services to the Ledger and MerkleTree classes.
+ * <p>
+ * MessageDigest instances are expensive to look up and are not thread-safe, so each thread
+ * keeps its own instance and reuses it for every call. All hashing works on byte arrays and
+ * byte buffers; digests are only converted to hex strings, using a lookup table,
+ * at the API boundary.
+ *
+ * @see MerkleTree
+ * @author austinhigh
+ */
+public final class Sha256 {
+
+    /**
+     * Length of a SHA-256 digest in bytes.
+     */
+    public static final int DIGEST_LENGTH = 32;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    });
+
+    private Sha256() {
+    }
+
+    /**
+     * Returns the SHA-256 digest of the given bytes.
+     *
+     * @param input input
+     * @return {@link byte[]}
+     */
+    public static byte[] digest(byte[] input) {
+        return DIGEST.get().digest(input);
+    }
+
+    /**
+     * Returns the SHA-256 digest of the remaining bytes of the given buffer.
+     * The buffer's position is advanced to its limit.
+     *
+     * @param input input
+     * @return {@link byte[]}
+     */
+    public static byte[] digest(ByteBuffer input) {
+        MessageDigest md = DIGEST.get();
+        md.update(input);
+        return md.digest();
+    }
+
+    /**
+     * Hashes a byte range, writing the digest into the output array.
+     *
+     * @param input input
+     * @param offset offset of input
+     * @param length length of input
+     * @param out output array
+     * @param outOffset offset in output array
+     */
+    public static void digest(byte[] input, int offset, int length, byte[] out, int outOffset) {
+        MessageDigest md = DIGEST.get();
+        md.update(input, offset, length);
+        finish(md, out, outOffset);
+    }
+
+    /**
+     * Hashes the concatenation of two byte ranges, writing the digest into the output array.
+     * The output range may overlap either input range.
+     *
+     * @param left left input
+     * @param leftOffset offset of left input
+     * @param leftLength length of left input
+     * @param right right input
+     * @param rightOffset offset of right input
+     * @param rightLength length of right input
+     * @param out output array
+     * @param outOffset offset in output array
+     */
+    public static void digest(byte[] left, int leftOffset, int leftLength,
+                              byte[] right, int rightOffset, int rightLength,
+                              byte[] out, int outOffset) {
+        MessageDigest md = DIGEST.get();
+        md.update(left, leftOffset, leftLength);
+        md.update(right, rightOffset, rightLength);
+        finish(md, out, outOffset);
+    }
+
+    /**
+     * Completes a digest, writing the result into the output array.
+     *
+     * @param md message digest
+     * @param out output array
+     * @param outOffset offset in output array
+     */
+    private static void finish(MessageDigest md, byte[] out, int outOffset) {
+        try {
+            md.digest(out, outOffset, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalArgumentException("output buffer too small", e);
+        }
+    }
+
+    /**
+     * Converts bytes into a lower case hex string, two characters per byte.
+     *
+     * @param bytes bytes
+     * @return {@link String}
+     * @see String
+     */
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Converts a range of bytes into a lower case hex string, two characters per byte.
+     *
+     * @param bytes bytes
+     * @param offset offset
+     * @param length length
+     * @return {@link String}
+     * @see String
+     */
+    public static String toHex(byte[] bytes, int offset, int length) {
+        char[] chars = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xff;
+            chars[i * 2] = HEX[b >>> 4];
+            chars[i * 2 + 1] = HEX[b & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Converts a hex string into bytes.
+     *
+     * @param hex hex string with an even number of characters
+     * @return {@link byte[]}
+     */
+    public static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("hex string must have an even length");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int hi = Character.digit(hex.charAt(i * 2), 16);
+            int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("invalid hex character");
+            }
+            bytes[i] = (byte) ((hi << 4) | lo);
+        }
+        return bytes;
+    }
+}
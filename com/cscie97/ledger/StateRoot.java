@@ -0,0 +1,190 @@
+package com.cscie97.ledger;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A commitment to a set of account balances that can be updated one balance at a time.
+ * <p>
+ * The root is an additive multiset hash: the SHA-256 digest of each "address:balance" pair is
+ * read as a 256-bit number, and the root is the sum of these numbers modulo 2^256. Changing a
+ * balance subtracts the old pair's digest and adds the new one, so the root of the whole state
+ * is maintained in time proportional to the number of changed accounts, and the same set of
+ * balances always gives the same root whatever order the changes were made in. Two ledgers
+ * holding the same balances therefore agree on the root without exchanging their accounts.
+ * <p>
+ * The root detects accidental divergence, such as a balance changed by a bug or a corrupted block
+ * store, but not tampering. A sum of digests modulo 2^256 is not collision resistant against a
+ * chosen set of balances: a generalized birthday attack can find a different set of
+ * "address:balance" pairs with the same root. Detecting a deliberate change to the balances
+ * would need a Merkle tree over the accounts or a lattice multiset hash instead.
+ * <p>
+ * The commitment also keeps the running total of the balances.
+ *
+ * @see Ledger
+ * @see Block
+ * @author austinhigh
+ */
+public final class StateRoot {
+
+    // the 256-bit sum as four 64-bit words, least significant word first
+    private final long[] words;
+    private long total;
+
+    /**
+     * Class Constructor, for the commitment to an empty set of balances.
+     */
+    public StateRoot() {
+        this.words = new long[4];
+        this.total = 0;
+    }
+
+    /**
+     * Class Constructor, copying another commitment.
+     *
+     * @param other other
+     */
+    public StateRoot(StateRoot other) {
+        this.words = other.words.clone();
+        this.total = other.total;
+    }
+
+    /**
+     * Rebuilds a commitment from its hex root and total, as stored in a block header.
+     *
+     * @param root hex root, or null for the commitment to an empty set of balances
+     * @param total total of the balances
+     * @return {@link StateRoot}
+     */
+    public static StateRoot parse(String root, long total) {
+        StateRoot stateRoot = new StateRoot();
+        if (root != null) {
+            byte[] bytes = Sha256.fromHex(root);
+            if (bytes.length != Sha256.DIGEST_LENGTH) {
+                throw new IllegalArgumentException("state root must be " + Sha256.DIGEST_LENGTH + " bytes");
+            }
+            for (int i = 0; i < 4; i++) {
+                stateRoot.words[i] = word(bytes, i);
+            }
+        }
+        stateRoot.total = total;
+        return stateRoot;
+    }
+
+    /**
+     * Adds an account balance to the committed set.
+     *
+     * @param address account address
+     * @param balance balance
+     */
+    public void add(String address, long balance) {
+        byte[] digest = digest(address, balance);
+        long carry = 0;
+        for (int i = 0; i < 4; i++) {
+            long term = word(digest, i);
+            long sum = words[i] + term + carry;
+            // unsigned overflow out of this word
+            carry = Long.compareUnsigned(sum, words[i]) < 0 || (carry == 1 && sum == words[i]) ? 1 : 0;
+            words[i] = sum;
+        }
+        total += balance;
+    }
+
+    /**
+     * Removes an account balance from the committed set.
+     *
+     * @param address account address
+     * @param balance balance
+     */
+    public void remove(String address, long balance) {
+        byte[] digest = digest(address, balance);
+        long borrow = 0;
+        for (int i = 0; i < 4; i++) {
+            long term = word(digest, i);
+            long difference = words[i] - term - borrow;
+            // unsigned underflow out of this word
+            borrow = Long.compareUnsigned(words[i], term) < 0 || (borrow == 1 && words[i] == term) ? 1 : 0;
+            words[i] = difference;
+        }
+        total -= balance;
+    }
+
+    /**
+     * Combines the changes recorded in another commitment into this one.
+     *
+     * @param change commitment to the balances added, less the balances removed
+     */
+    public void apply(StateRoot change) {
+        long carry = 0;
+        for (int i = 0; i < 4; i++) {
+            long sum = words[i] + change.words[i] + carry;
+            carry = Long.compareUnsigned(sum, words[i]) < 0 || (carry == 1 && sum == words[i]) ? 1 : 0;
+            words[i] = sum;
+        }
+        total += change.total;
+    }
+
+    /**
+     * get total
+     *
+     * @return {@link long} total of the committed balances
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * get root
+     *
+     * @return {@link String} the 256-bit root as 64 hex characters
+     * @see String
+     */
+    public String getRoot() {
+        byte[] bytes = new byte[Sha256.DIGEST_LENGTH];
+        for (int i = 0; i < 4; i++) {
+            long word = words[i];
+            for (int b = 0; b < 8; b++) {
+                // most significant word first, big endian within each word
+                bytes[(3 - i) * 8 + 7 - b] = (byte) (word >>> (8 * b));
+            }
+        }
+        return Sha256.toHex(bytes);
+    }
+
+    /**
+     * to string
+     *
+     * @return {@link String}
+     * @see String
+     */
+    @Override
+    public String toString() {
+        return "State Root: " + getRoot() + "\nTotal: " + total;
+    }
+
+    /**
+     * Returns the SHA-256 digest of an account balance.
+     *
+     * @param address account address
+     * @param balance balance
+     * @return {@link byte[]}
+     */
+    private static byte[] digest(String address, long balance) {
+        return Sha256.digest((address + ":" + balance).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a 64-bit word of a big endian 256-bit number.
+     *
+     * @param bytes 32 bytes, most significant first
+     * @param index index of the word, least significant first
+     * @return {@link long}
+     */
+    private static long word(byte[] bytes, int index) {
+        long word = 0;
+        int offset = (3 - index) * 8;
+        for (int b = 0; b < 8; b++) {
+            word = (word << 8) | (bytes[offset + b] & 0xff);
+        }
+        return word;
+    }
+}
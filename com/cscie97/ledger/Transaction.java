@@ -11,8 +11,8 @@ package com.cscie97.ledger;
  */
 public class Transaction {
     private int transactionId;
-    private int amount;
-    private int fee;
+    private long amount;
+    private long fee;
     private String note;
     private String receiver;
     private String payer;
@@ -26,7 +26,7 @@ public class Transaction {
      * @param payer account id of payer
      * @param receiver account id of receiver
      */
-    public Transaction(int transactionId, int amount, int fee, String note, String payer, String receiver) {
+    public Transaction(int transactionId, long amount, long fee, String note, String payer, String receiver) {
         this.transactionId = transactionId;
         this.amount = amount;
         this.fee = fee;
@@ -89,9 +89,9 @@ public class Transaction {
     /**
      * get amount
      *
-     * @return {@link int}
+     * @return {@link long}
      */
-    public int getAmount() {
+    public long getAmount() {
         return this.amount;
     }
 
@@ -100,16 +100,16 @@ public class Transaction {
      *
      * @param amount amount
      */
-    public void setAmount(int amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
 
     /**
      * get fee
      *
-     * @return {@link int}
+     * @return {@link long}
      */
-    public int getFee() {
+    public long getFee() {
         return this.fee;
     }
 
@@ -118,7 +118,7 @@ public class Transaction {
      *
      * @param fee fee
      */
-    public void setFee(int fee) {
+    public void setFee(long fee) {
         this.fee = fee;
     }
 
@@ -0,0 +1,131 @@
+package com.cscie97.ledger;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes transactions into a compact, length prefixed binary record format for bulk
+ * ingestion, and decodes them again.
+ * <p>
+ * A transaction file starts with a four byte magic number, followed by one record per transaction:
+ * <pre>
+ *   int    magic "LTX1", once at the start of the file
+ *   int    record length, in bytes following the length
+ *   int    transaction id
+ *   long   amount
+ *   long   fee
+ *   string note, payer, receiver
+ * </pre>
+ * Strings are written as in {@link BlockCodec}: an int byte length (-1 for null) followed by
+ * UTF-8 bytes. Numeric fields are read directly from the buffer, so decoding a record builds
+ * no text for them, and the length prefix lets a reader step over a record without decoding it.
+ *
+ * @see TransactionFile
+ * @see Transaction
+ * @author austinhigh
+ */
+public final class TransactionCodec {
+
+    /**
+     * Magic number at the start of a transaction file, "LTX1" in ASCII.
+     */
+    public static final int MAGIC = 0x4C545831;
+
+    private TransactionCodec() {
+    }
+
+    /**
+     * Returns an upper bound on the encoded size of a transaction record, length prefix included.
+     *
+     * @param transaction transaction
+     * @return {@link int}
+     */
+    public static int maxEncodedSize(Transaction transaction) {
+        return 4 + 4 + 8 + 8 + BlockCodec.maxSize(transaction.getNote())
+                + BlockCodec.maxSize(transaction.getPayer()) + BlockCodec.maxSize(transaction.getReceiver());
+    }
+
+    /**
+     * Encodes a transaction record into the buffer at its current position, advancing the position.
+     * The buffer must have at least {@link #maxEncodedSize(Transaction)} bytes remaining.
+     *
+     * @param transaction transaction
+     * @param buffer buffer
+     */
+    public static void encode(Transaction transaction, ByteBuffer buffer) {
+        int start = buffer.position();
+        // reserve the length prefix, filled in once the record has been written
+        buffer.position(start + 4);
+        buffer.putInt(transaction.getTransactionId());
+        buffer.putLong(transaction.getAmount());
+        buffer.putLong(transaction.getFee());
+        BlockCodec.putString(buffer, transaction.getNote());
+        BlockCodec.putString(buffer, transaction.getPayer());
+        BlockCodec.putString(buffer, transaction.getReceiver());
+        buffer.putInt(start, buffer.position() - start - 4);
+    }
+
+    /**
+     * Decodes the transaction record at the buffer's position, advancing the position past it.
+     *
+     * @param buffer buffer
+     * @return {@link Transaction}
+     * @see Transaction
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    public static Transaction decode(ByteBuffer buffer) {
+        try {
+            int length = buffer.getInt();
+            if (length < 32 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("invalid transaction record length " + length);
+            }
+            int end = buffer.position() + length;
+            int id = buffer.getInt();
+            long amount = buffer.getLong();
+            long fee = buffer.getLong();
+            String note = BlockCodec.getString(buffer, end);
+            String payer = BlockCodec.getString(buffer, end);
+            String receiver = BlockCodec.getString(buffer, end);
+            Transaction transaction = new Transaction(id, amount, fee, note, payer, receiver);
+            if (buffer.position() != end) {
+                throw new IllegalArgumentException("transaction record length does not match its fields");
+            }
+            return transaction;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated transaction record", e);
+        }
+    }
+
+    /**
+     * Checks the transaction record at the buffer's position and advances the position past it,
+     * without building the transaction. A record that passes is decoded by {@link #decode(ByteBuffer)}.
+     *
+     * @param buffer buffer
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    public static void skip(ByteBuffer buffer) {
+        try {
+            int length = buffer.getInt();
+            if (length < 32 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("invalid transaction record length " + length);
+            }
+            int end = buffer.position() + length;
+            // step over the id, amount and fee, then the note, payer and receiver
+            buffer.position(buffer.position() + 20);
+            for (int i = 0; i < 3; i++) {
+                int stringLength = buffer.getInt();
+                if (stringLength > end - buffer.position()) {
+                    throw new IllegalArgumentException("invalid string length " + stringLength);
+                }
+                if (stringLength > 0) {
+                    buffer.position(buffer.position() + stringLength);
+                }
+            }
+            if (buffer.position() != end) {
+                throw new IllegalArgumentException("transaction record length does not match its fields");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated transaction record", e);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.cscie97.ledger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts command scripts into binary transaction files, and loads transaction files into a Ledger.
+ * <p>
+ * A transaction file holds the records described in {@link TransactionCodec}. Converting a script
+ * keeps its process-transaction lines, in order, and skips every other command. Loading maps the
+ * file into memory a window at a time, so files of any size can be loaded, and decodes the records
+ * straight from the mapped window into batches, each applied with a single call to
+ * {@link Ledger#processTransactions(List)}, so the ledger sees the transactions in file order
+ * exactly as if they had been processed one by one. Every record is checked before the first
+ * batch is applied, so a malformed or truncated file changes nothing.
+ * <p>
+ * Usage: TransactionFile convert &lt;script&gt; &lt;transaction-file&gt;
+ *
+ * @see TransactionCodec
+ * @see Ledger
+ * @author austinhigh
+ */
+public final class TransactionFile {
+
+    /**
+     * Number of transactions passed to the ledger in each batch while loading.
+     */
+    public static final int BATCH_SIZE = 4096;
+
+    /**
+     * Number of bytes of a transaction file mapped at a time while loading.
+     */
+    public static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private TransactionFile() {
+    }
+
+    /**
+     * Converts the process-transaction lines of a script into a transaction file. Malformed
+     * process-transaction lines are not converted, and are printed with their line numbers.
+     *
+     * @param script script path
+     * @param file transaction file path, replaced if it exists
+     * @param errors writer receiving the malformed lines
+     * @return {@link int} number of transactions written
+     * @throws IOException if the script cannot be read or the transaction file written
+     */
+    public static int convert(Path script, Path file, PrintWriter errors) throws IOException {
+        int count = 0;
+        try (BufferedReader reader = ScriptRunner.open(script);
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(ScriptRunner.BUFFER_SIZE);
+            buffer.putInt(TransactionCodec.MAGIC);
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                ParsedCommand parsed = CommandProcessor.parse(line, lineNumber);
+                if (parsed.getFields().isEmpty() || !parsed.getFields().get(0).equals("process-transaction")) {
+                    continue;
+                }
+                Transaction transaction = parsed.getTransaction();
+                if (transaction == null) {
+                    CommandProcessorException error = new CommandProcessorException("malformed process-transaction");
+                    error.setCommand(line);
+                    error.setLineNumber(lineNumber);
+                    errors.println(error);
+                    continue;
+                }
+                int size = TransactionCodec.maxEncodedSize(transaction);
+                if (buffer.remaining() < size) {
+                    write(channel, buffer);
+                    if (buffer.capacity() < size) {
+                        buffer = ByteBuffer.allocate(size);
+                    }
+                }
+                TransactionCodec.encode(transaction, buffer);
+                count++;
+            }
+            write(channel, buffer);
+        }
+        errors.flush();
+        return count;
+    }
+
+    /**
+     * Loads a transaction file into a ledger. The whole file is checked first, and nothing is
+     * applied if any record is malformed.
+     *
+     * @param file transaction file path
+     * @param ledger ledger
+     * @return {@link List} results of the rejected transactions, in file order
+     * @see TransactionResult
+     * @throws IOException if the file cannot be read
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     * @throws IllegalArgumentException if the file is not a well formed transaction file, giving
+     *                                  the offset of the first malformed record
+     */
+    public static List<TransactionResult> load(Path file, Ledger ledger) throws IOException, LedgerException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < 4 || channel.map(FileChannel.MapMode.READ_ONLY, 0, 4).getInt() != TransactionCodec.MAGIC) {
+                throw new IllegalArgumentException("not a transaction file");
+            }
+            // check every record before any is applied
+            forEachRecord(channel, TransactionCodec::skip);
+
+            List<TransactionResult> rejected = new ArrayList<TransactionResult>();
+            ArrayList<Transaction> batch = new ArrayList<Transaction>(BATCH_SIZE);
+            forEachRecord(channel, window -> {
+                batch.add(TransactionCodec.decode(window));
+                if (batch.size() == BATCH_SIZE) {
+                    apply(batch, ledger, rejected);
+                }
+            });
+            apply(batch, ledger, rejected);
+            return rejected;
+        }
+    }
+
+    /**
+     * Passes each record of a transaction file to a reader, mapping the file a window at a time.
+     * A window ends after the last record it holds whole, and the next window starts at the
+     * following record; a record longer than a window is mapped in a window of its own.
+     *
+     * @param channel transaction file
+     * @param reader reader, advancing the window's position past one record
+     * @throws IOException if the file cannot be read
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     * @throws IllegalArgumentException if a record is malformed, giving its offset in the file
+     */
+    private static void forEachRecord(FileChannel channel, RecordReader reader) throws IOException, LedgerException {
+        long size = channel.size();
+        long position = 4;
+        long windowSize = WINDOW_SIZE;
+        while (position < size) {
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+            boolean last = position + window.limit() == size;
+            // in the last window every record is read, so a truncated record is reported
+            while (window.hasRemaining() && (last || holdsRecord(window))) {
+                int start = window.position();
+                try {
+                    reader.read(window);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(e.getMessage() + " at offset " + (position + start), e);
+                }
+            }
+            // the next record is longer than a window if none was read
+            windowSize = window.position() == 0 ? 4L + window.getInt(0) : WINDOW_SIZE;
+            position += window.position();
+        }
+    }
+
+    /**
+     * Checks whether the record at the window's position lies wholly within the window, or has a
+     * length that marks it as malformed wherever it ends.
+     *
+     * @param window window
+     * @return {@link boolean}
+     */
+    private static boolean holdsRecord(ByteBuffer window) {
+        if (window.remaining() < 4) {
+            return false;
+        }
+        int length = window.getInt(window.position());
+        return length < 32 || 4L + length <= window.remaining();
+    }
+
+    /**
+     * Applies a batch of transactions to a ledger, keeping the results of the rejected
+     * transactions, and empties the batch.
+     *
+     * @param batch transactions
+     * @param ledger ledger
+     * @param rejected results of the rejected transactions
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private static void apply(ArrayList<Transaction> batch, Ledger ledger, List<TransactionResult> rejected)
+            throws LedgerException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (TransactionResult result : ledger.processTransactions(batch)) {
+            if (!result.isAccepted()) {
+                rejected.add(result);
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Writes the buffered records to the channel and empties the buffer.
+     *
+     * @param channel channel
+     * @param buffer buffer
+     * @throws IOException if the records cannot be written
+     */
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads one record from a mapped window of a transaction file.
+     */
+    private interface RecordReader {
+        void read(ByteBuffer window) throws LedgerException;
+    }
+
+    /**
+     * Converts the process transaction commands of a command script into a transaction file.
+     * <p>
+     * Usage: TransactionFile convert &lt;script&gt; &lt;transaction-file&gt;
+     *
+     * @param args "convert", the path of the command script and the path of the transaction file to write
+     * @throws IOException if the script cannot be read or the transaction file cannot be written
+     * @throws IllegalArgumentException if the arguments do not match the usage
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !args[0].equals("convert")) {
+            throw new IllegalArgumentException("usage: TransactionFile convert <script> <transaction-file>");
+        }
+        PrintWriter out = new PrintWriter(System.out, true);
+        int count = convert(Paths.get(args[1]), Paths.get(args[2]), out);
+        out.println("Converted " + count + " transactions");
+    }
+}
@@ -0,0 +1,311 @@
+package com.cscie97.ledger;
+
+import java.util.Arrays;
+
+/**
+ * Maps transaction ids to the position of the transaction within the blockchain.
+ * <p>
+ * Each entry records the number of the block containing the transaction and the
+ * slot (index) of the transaction within that block's transaction list. The index
+ * is an open addressing hash table keyed by primitive ints, with the block number
+ * and slot packed into a single long, so no boxed keys or entry objects are allocated.
+ * Lookups and inserts are O(1), replacing the full scan of the block map.
+ * <p>
+ * The index is safe for use by concurrent threads. Keys are spread over a fixed number of
+ * segments, each a separate table guarded by its own lock, so threads indexing different
+ * transactions rarely contend. A transaction id can be reserved before its position is known,
+ * which lets concurrent transactions with the same id be rejected atomically.
+ *
+ * @see Ledger
+ * @author austinhigh
+ */
+public class TransactionIndex {
+
+    private static final long EMPTY = -1L;
+    private static final long RESERVED = -2L;
+    private static final int SEGMENT_BITS = 4;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Segment[] segments;
+
+    /**
+     * Class Constructor.
+     */
+    public TransactionIndex() {
+        this.segments = new Segment[1 << SEGMENT_BITS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Records the position of a transaction.
+     *
+     * @param transactionId transaction id
+     * @param blockNumber number of block containing the transaction
+     * @param slot index of the transaction within the block's transaction list
+     * @return {@link boolean} false if the transaction id was already indexed
+     */
+    public boolean put(int transactionId, int blockNumber, int slot) {
+        Segment segment = segmentFor(transactionId);
+        synchronized (segment) {
+            return segment.insert(transactionId, pack(blockNumber, slot));
+        }
+    }
+
+    /**
+     * Reserves a transaction id whose position is not yet known. A reserved id is
+     * reported by {@link #contains(int)} but not by {@link #get(int)} until it is
+     * given a position with {@link #update(int, int, int)}, or released with {@link #remove(int)}.
+     *
+     * @param transactionId transaction id
+     * @return {@link boolean} false if the transaction id was already indexed or reserved
+     */
+    public boolean reserve(int transactionId) {
+        Segment segment = segmentFor(transactionId);
+        synchronized (segment) {
+            return segment.insert(transactionId, RESERVED);
+        }
+    }
+
+    /**
+     * Sets the position of a reserved or indexed transaction.
+     *
+     * @param transactionId transaction id
+     * @param blockNumber number of block containing the transaction
+     * @param slot index of the transaction within the block's transaction list
+     */
+    public void update(int transactionId, int blockNumber, int slot) {
+        Segment segment = segmentFor(transactionId);
+        synchronized (segment) {
+            int i = segment.findSlot(transactionId);
+            if (segment.positions[i] == EMPTY) {
+                throw new IllegalStateException("transaction " + transactionId + " is not indexed");
+            }
+            segment.positions[i] = pack(blockNumber, slot);
+        }
+    }
+
+    /**
+     * Removes a transaction id from the index.
+     *
+     * @param transactionId transaction id
+     * @return {@link boolean} false if the transaction id was not indexed
+     */
+    public boolean remove(int transactionId) {
+        Segment segment = segmentFor(transactionId);
+        synchronized (segment) {
+            return segment.delete(transactionId);
+        }
+    }
+
+    /**
+     * Checks whether a transaction id has been indexed or reserved.
+     *
+     * @param transactionId transaction id
+     * @return {@link boolean}
+     */
+    public boolean contains(int transactionId) {
+        Segment segment = segmentFor(transactionId);
+        synchronized (segment) {
+            return segment.positions[segment.findSlot(transactionId)] != EMPTY;
+        }
+    }
+
+    /**
+     * Returns the packed position of a transaction, or -1 if not indexed or only reserved.
+     * Use {@link #blockNumber(long)} and {@link #slot(long)} to unpack the result.
+     *
+     * @param transactionId transaction id
+     * @return {@link long}
+     */
+    public long get(int transactionId) {
+        Segment segment = segmentFor(transactionId);
+        long position;
+        synchronized (segment) {
+            position = segment.positions[segment.findSlot(transactionId)];
+        }
+        return position == RESERVED ? EMPTY : position;
+    }
+
+    /**
+     * Removes all entries from the index.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Arrays.fill(segment.positions, EMPTY);
+                segment.size = 0;
+            }
+        }
+    }
+
+    /**
+     * get size
+     *
+     * @return {@link int}
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Extracts the block number from a packed position.
+     *
+     * @param position packed position
+     * @return {@link int}
+     */
+    public static int blockNumber(long position) {
+        return (int) (position >>> 32);
+    }
+
+    /**
+     * Extracts the slot from a packed position.
+     *
+     * @param position packed position
+     * @return {@link int}
+     */
+    public static int slot(long position) {
+        return (int) position;
+    }
+
+    /**
+     * Packs a block number and slot into a single long.
+     *
+     * @param blockNumber blockNumber
+     * @param slot slot
+     * @return {@link long}
+     */
+    static long pack(int blockNumber, int slot) {
+        return ((long) blockNumber << 32) | (slot & 0xffffffffL);
+    }
+
+    /**
+     * Spreads the bits of a key so sequential ids do not cluster.
+     *
+     * @param key key
+     * @return {@link int}
+     */
+    private static int spread(int key) {
+        return key * 0x9E3779B9;
+    }
+
+    /**
+     * Returns the segment holding the given key, chosen by the high bits of its spread hash.
+     *
+     * @param key key
+     * @return {@link Segment}
+     */
+    private Segment segmentFor(int key) {
+        return segments[spread(key) >>> (32 - SEGMENT_BITS)];
+    }
+
+    /**
+     * One table of the index, always accessed while holding its monitor.
+     */
+    private static final class Segment {
+
+        private int[] keys;
+        private long[] positions;
+        private int size;
+        private int mask;
+
+        Segment() {
+            this.keys = new int[INITIAL_CAPACITY];
+            this.positions = new long[INITIAL_CAPACITY];
+            Arrays.fill(this.positions, EMPTY);
+            this.mask = INITIAL_CAPACITY - 1;
+        }
+
+        /**
+         * Inserts a key unless it is already present.
+         *
+         * @param key key
+         * @param position packed position or reservation marker
+         * @return {@link boolean} false if the key was already present
+         */
+        boolean insert(int key, long position) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                // keep load factor below 0.75
+                resize(keys.length * 2);
+            }
+            int i = findSlot(key);
+            if (positions[i] != EMPTY) {
+                // transaction id already present
+                return false;
+            }
+            keys[i] = key;
+            positions[i] = position;
+            size++;
+            return true;
+        }
+
+        /**
+         * Deletes a key, shifting back any later entries of its probe run so that
+         * no tombstones are needed.
+         *
+         * @param key key
+         * @return {@link boolean} false if the key was not present
+         */
+        boolean delete(int key) {
+            int gap = findSlot(key);
+            if (positions[gap] == EMPTY) {
+                return false;
+            }
+            positions[gap] = EMPTY;
+            size--;
+            for (int i = (gap + 1) & mask; positions[i] != EMPTY; i = (i + 1) & mask) {
+                int home = spread(keys[i]) & mask;
+                // move the entry into the gap if its home slot does not lie between the gap and its slot
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    positions[gap] = positions[i];
+                    positions[i] = EMPTY;
+                    gap = i;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Linear probe for the table slot holding the given key, or the first empty slot.
+         *
+         * @param key key
+         * @return {@link int}
+         */
+        int findSlot(int key) {
+            int i = spread(key) & mask;
+            while (positions[i] != EMPTY && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /**
+         * Rehashes all entries into a table of the given capacity.
+         *
+         * @param capacity new capacity (power of two)
+         */
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            long[] oldPositions = positions;
+            keys = new int[capacity];
+            positions = new long[capacity];
+            Arrays.fill(positions, EMPTY);
+            mask = capacity - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldPositions[j] != EMPTY) {
+                    int i = findSlot(oldKeys[j]);
+                    keys[i] = oldKeys[j];
+                    positions[i] = oldPositions[j];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.cscie97.ledger;
+
+/**
+ * The outcome of one transaction in a batch passed to {@link Ledger#processTransactions(java.util.List)}.
+ * Holds the transaction and, if the transaction was rejected, the LedgerException explaining why.
+ *
+ * @see Ledger
+ * @see Transaction
+ * @author austinhigh
+ */
+public class TransactionResult {
+
+    private Transaction transaction;
+    private LedgerException exception;
+
+    /**
+     * Class Constructor.
+     *
+     * @param transaction transaction
+     * @param exception reason the transaction was rejected, or null if it was accepted
+     */
+    public TransactionResult(Transaction transaction, LedgerException exception) {
+        this.transaction = transaction;
+        this.exception = exception;
+    }
+
+    /**
+     * to string
+     *
+     * @return {@link String}
+     * @see String
+     */
+    @Override
+    public String toString() {
+        return "Transaction Id: " + transaction.getTransactionId() +
+                (isAccepted() ? "\nAccepted" : "\nRejected: " + exception.getReason());
+    }
+
+    /**
+     * Returns whether the transaction was accepted.
+     *
+     * @return {@link boolean}
+     */
+    public boolean isAccepted() {
+        return this.exception == null;
+    }
+
+    /**
+     * get transaction id
+     *
+     * @return {@link String}
+     * @see String
+     */
+    public String getTransactionId() {
+        return Integer.toString(this.transaction.getTransactionId());
+    }
+
+    /**
+     * get transaction
+     *
+     * @return {@link Transaction}
+     * @see Transaction
+     */
+    public Transaction getTransaction() {
+        return this.transaction;
+    }
+
+    /**
+     * get exception
+     *
+     * @return {@link LedgerException} or null if the transaction was accepted
+     * @see LedgerException
+     */
+    public LedgerException getException() {
+        return this.exception;
+    }
+}
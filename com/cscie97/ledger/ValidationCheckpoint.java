@@ -0,0 +1,72 @@
+package com.cscie97.ledger;
+
+/**
+ * The last block a validation of the blockchain found valid, recorded so that a later
+ * validation need only check the blocks committed since.
+ * <p>
+ * Holds the number and hash of the block, and a digest of the two keyed with the ledger's seed,
+ * which the ledger checks before trusting the checkpoint. The block's hash covers its state root,
+ * so the checkpoint also commits to the account balances after the block.
+ *
+ * @see Ledger#validateSinceCheckpoint(ValidationMonitor)
+ * @author austinhigh
+ */
+public class ValidationCheckpoint {
+
+    private int blockNumber;
+    private String blockHash;
+    private String digest;
+
+    /**
+     * Class Constructor.
+     *
+     * @param blockNumber number of the last validated block
+     * @param blockHash hash of the last validated block
+     * @param digest digest of the checkpoint
+     */
+    public ValidationCheckpoint(int blockNumber, String blockHash, String digest) {
+        this.blockNumber = blockNumber;
+        this.blockHash = blockHash;
+        this.digest = digest;
+    }
+
+    /**
+     * to string
+     *
+     * @return {@link String}
+     * @see String
+     */
+    @Override
+    public String toString() {
+        return "Block Number: " + blockNumber + "\nHash: " + blockHash + "\nDigest: " + digest;
+    }
+
+    /**
+     * get block number
+     *
+     * @return {@link int}
+     */
+    public int getBlockNumber() {
+        return this.blockNumber;
+    }
+
+    /**
+     * get block hash
+     *
+     * @return {@link String}
+     * @see String
+     */
+    public String getBlockHash() {
+        return this.blockHash;
+    }
+
+    /**
+     * get digest
+     *
+     * @return {@link String}
+     * @see String
+     */
+    public String getDigest() {
+        return this.digest;
+    }
+}
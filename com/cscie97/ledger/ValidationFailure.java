@@ -0,0 +1,54 @@
+package com.cscie97.ledger;
+
+/**
+ * A check that failed for one block while validating the blockchain.
+ *
+ * @see Ledger#validate(ValidationMonitor)
+ * @author austinhigh
+ */
+public class ValidationFailure {
+
+    private int blockNumber;
+    private String reason;
+
+    /**
+     * Class Constructor.
+     *
+     * @param blockNumber number of the block that failed the check
+     * @param reason reason the check failed
+     */
+    public ValidationFailure(int blockNumber, String reason) {
+        this.blockNumber = blockNumber;
+        this.reason = reason;
+    }
+
+    /**
+     * to string
+     *
+     * @return {@link String}
+     * @see String
+     */
+    @Override
+    public String toString() {
+        return "Block Number: " + blockNumber + "\nReason: " + reason;
+    }
+
+    /**
+     * get block number
+     *
+     * @return {@link int}
+     */
+    public int getBlockNumber() {
+        return this.blockNumber;
+    }
+
+    /**
+     * get reason
+     *
+     * @return {@link String}
+     * @see String
+     */
+    public String getReason() {
+        return this.reason;
+    }
+}
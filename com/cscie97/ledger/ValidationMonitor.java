@@ -0,0 +1,98 @@
+package com.cscie97.ledger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Reports the progress of a chain validation and lets another thread cancel it.
+ * <p>
+ * The progress listener is called with the number of blocks checked so far and the number of
+ * blocks to check each time a range of blocks has been checked. It may be called from any of the
+ * validating threads, but never by two threads at once.
+ *
+ * @see Ledger#validate(ValidationMonitor)
+ * @author austinhigh
+ */
+public class ValidationMonitor {
+
+    private final BiConsumer<Integer, Integer> progressListener;
+    private final AtomicInteger blocksChecked;
+    private volatile int totalBlocks;
+    private volatile boolean cancelled;
+
+    /**
+     * Class Constructor, without a progress listener.
+     */
+    public ValidationMonitor() {
+        this(null);
+    }
+
+    /**
+     * Class Constructor.
+     *
+     * @param progressListener called with the blocks checked so far and the blocks to check, or null
+     */
+    public ValidationMonitor(BiConsumer<Integer, Integer> progressListener) {
+        this.progressListener = progressListener;
+        this.blocksChecked = new AtomicInteger();
+    }
+
+    /**
+     * Asks the validation to stop. Blocks already being checked are finished first.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Returns whether the validation has been asked to stop.
+     *
+     * @return {@link boolean}
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Sets the number of blocks to check and resets the count of blocks checked.
+     *
+     * @param totalBlocks total blocks
+     */
+    void start(int totalBlocks) {
+        this.totalBlocks = totalBlocks;
+        this.blocksChecked.set(0);
+    }
+
+    /**
+     * Records that a range of blocks has been checked and reports the progress.
+     *
+     * @param blocks number of blocks checked
+     */
+    void checked(int blocks) {
+        synchronized (this) {
+            // count and report together so progress is reported in increasing order
+            int checked = blocksChecked.addAndGet(blocks);
+            if (progressListener != null) {
+                progressListener.accept(checked, totalBlocks);
+            }
+        }
+    }
+
+    /**
+     * get blocks checked
+     *
+     * @return {@link int}
+     */
+    public int getBlocksChecked() {
+        return this.blocksChecked.get();
+    }
+
+    /**
+     * get total blocks
+     *
+     * @return {@link int}
+     */
+    public int getTotalBlocks() {
+        return this.totalBlocks;
+    }
+}
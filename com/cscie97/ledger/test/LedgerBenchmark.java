@@ -0,0 +1,336 @@
+package com.cscie97.ledger.test;
+
+import com.cscie97.ledger.Ledger;
+import com.cscie97.ledger.LedgerException;
+import com.cscie97.ledger.MerkleTree;
+import com.cscie97.ledger.Transaction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ *  Measures the cost of the Ledger's hot paths at growing sizes, so that a path whose cost
+ *  grows with the chain or with the number of accounts shows up as a rising curve.
+ *
+ *  Usage: LedgerBenchmark [--quick] [--record file] [--baseline file] [--tolerance factor]
+ *  Benchmarks, each at several sizes:
+ *  <ul>
+ *  <li>process-transaction: processTransaction as a new chain reaches the given number of transactions</li>
+ *  <li>seal-block: sealing a block of ten transactions with the given number of accounts</li>
+ *  <li>merkle-tree: MerkleTree.createMerkleTree over the given number of leaves</li>
+ *  <li>get-sha: MerkleTree.getSha of a transaction string</li>
+ *  <li>get-transaction: getTransaction of random ids in a chain of the given number of transactions</li>
+ *  <li>validate: validate on a chain of the given number of transactions</li>
+ *  </ul>
+ *  Each benchmark is warmed up, then timed repeatedly for a second, and the best time per operation is
+ *  printed with its growth over the previous size. With --record the results are written to a
+ *  baseline file; with --baseline they are compared to one, and the run fails if any benchmark
+ *  is slower than its baseline by more than the tolerance factor (2 by default).
+ *  The committed baseline is benchmark-baseline.txt in this package, recorded with --quick;
+ *  timings depend on the machine, so re-record it when the reference machine changes.
+ */
+public class LedgerBenchmark {
+
+    private static final int ITERATIONS = 5;
+    private static final long WARM_UP_NANOS = 500000000L;
+    private static final long MEASUREMENT_NANOS = 1000000000L;
+    private static final int BLOCK_SIZE = 10;
+    private static final int ACCOUNTS = 100;
+    private static final long FUNDING = 10000000L;
+
+    /**
+     * An operation to time, which may throw the Ledger's checked exceptions.
+     */
+    private interface Operation {
+        void run() throws Throwable;
+    }
+
+    /**
+     * An operation that times part of its own work, returning the time in nanoseconds.
+     */
+    private interface Measurement {
+        long run() throws Throwable;
+    }
+
+    // results by "benchmark size", in nanoseconds per operation
+    private static final Map<String, Double> results = new LinkedHashMap<String, Double>();
+
+    public static void main(String[] args) throws Throwable {
+        boolean quick = false;
+        String record = null;
+        String baseline = null;
+        double tolerance = 2.0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--quick":
+                    quick = true;
+                    break;
+                case "--record":
+                    record = args[++i];
+                    break;
+                case "--baseline":
+                    baseline = args[++i];
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("usage: LedgerBenchmark [--quick] [--record file]"
+                            + " [--baseline file] [--tolerance factor]");
+            }
+        }
+        int[] chains = quick ? new int[]{1000, 10000, 100000} : new int[]{10000, 100000, 1000000};
+        int[] accountCounts = quick ? new int[]{100, 10000, 100000} : new int[]{1000, 100000, 1000000};
+        int[] leaves = quick ? new int[]{1024, 16384, 262144} : new int[]{1024, 65536, 1048576};
+
+        System.out.println(String.format("%-20s %10s %14s %8s", "benchmark", "size", "ns/op", "growth"));
+        for (int chain : chains) {
+            benchmarkProcessTransaction(chain);
+        }
+        for (int accountCount : accountCounts) {
+            benchmarkSealBlock(accountCount);
+        }
+        for (int leafCount : leaves) {
+            benchmarkMerkleTree(leafCount);
+        }
+        benchmarkGetSha();
+        for (int chain : chains) {
+            benchmarkGetTransaction(chain);
+        }
+        for (int chain : chains) {
+            benchmarkValidate(chain);
+        }
+
+        if (record != null) {
+            List<String> lines = new ArrayList<String>();
+            lines.add("# benchmark size ns/op");
+            for (Map.Entry<String, Double> result : results.entrySet()) {
+                lines.add(result.getKey() + " " + String.format("%.1f", result.getValue()));
+            }
+            Files.write(Paths.get(record), lines, StandardCharsets.UTF_8);
+        }
+        if (baseline != null && !compare(baseline, tolerance)) {
+            System.out.println("FAIL");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Times processTransaction as the chain reaches the given number of transactions. Each run
+     * builds a new chain, untimed, and times only its last transactions, so every run measures
+     * a chain of the given length rather than one grown by the runs before it.
+     *
+     * @param chain number of transactions in the chain once the timed transactions are processed
+     */
+    private static void benchmarkProcessTransaction(int chain) throws Throwable {
+        int batch = Math.min(1000, chain / 10);
+        report("process-transaction", chain, measure(() -> {
+            Ledger ledger = fundedLedger(ACCOUNTS);
+            int nextId = extend(ledger, ACCOUNTS + 1, chain - batch, ACCOUNTS);
+            long start = System.nanoTime();
+            extend(ledger, nextId, batch, ACCOUNTS);
+            return System.nanoTime() - start;
+        }) / batch);
+    }
+
+    /**
+     * Times sealing a block of ten transactions in a ledger with the given number of accounts.
+     *
+     * @param accountCount number of accounts
+     */
+    private static void benchmarkSealBlock(int accountCount) throws Throwable {
+        Ledger ledger = fundedLedger(accountCount);
+        int[] nextId = {ACCOUNTS + 1};
+        int blocks = 200;
+        report("seal-block", accountCount, measure(() -> {
+            long sealing = 0;
+            for (int b = 0; b < blocks; b++) {
+                // fill all but the last slot, so the block is sealed by the timed call only
+                nextId[0] = extend(ledger, nextId[0], BLOCK_SIZE - 1, ACCOUNTS);
+                long start = System.nanoTime();
+                ledger.sealOpenBlock();
+                sealing += System.nanoTime() - start;
+            }
+            return sealing;
+        }) / blocks);
+    }
+
+    /**
+     * Times building the merkle root of the given number of leaves.
+     *
+     * @param leafCount number of leaves
+     */
+    private static void benchmarkMerkleTree(int leafCount) throws Throwable {
+        ArrayList<String> transactions = new ArrayList<String>(leafCount);
+        for (int i = 0; i < leafCount; i++) {
+            transactions.add("10" + "1000" + "\"benchmark\"" + "payer" + "receiver" + i);
+        }
+        report("merkle-tree", leafCount, time(() -> MerkleTree.createMerkleTree(transactions)));
+    }
+
+    /**
+     * Times hashing a transaction string.
+     */
+    private static void benchmarkGetSha() throws Throwable {
+        String input = "1" + "1000" + "10" + "\"benchmark\"" + "payer" + "receiver";
+        int batch = 100000;
+        report("get-sha", input.length(), time(() -> {
+            for (int i = 0; i < batch; i++) {
+                MerkleTree.getSha(input);
+            }
+        }) / batch);
+    }
+
+    /**
+     * Times looking up random transactions in a chain of the given number of transactions.
+     *
+     * @param chain number of transactions in the chain
+     */
+    private static void benchmarkGetTransaction(int chain) throws Throwable {
+        Ledger ledger = fundedLedger(ACCOUNTS);
+        int lastId = extend(ledger, ACCOUNTS + 1, chain, ACCOUNTS) - 1;
+        Random random = new Random(chain);
+        int batch = 100000;
+        report("get-transaction", chain, time(() -> {
+            for (int i = 0; i < batch; i++) {
+                if (ledger.getTransaction(Integer.toString(1 + random.nextInt(lastId))) == null) {
+                    throw new IllegalStateException("transaction not found");
+                }
+            }
+        }) / batch);
+    }
+
+    /**
+     * Times validating a chain of the given number of transactions.
+     *
+     * @param chain number of transactions in the chain
+     */
+    private static void benchmarkValidate(int chain) throws Throwable {
+        Ledger ledger = fundedLedger(ACCOUNTS);
+        extend(ledger, ACCOUNTS + 1, chain, ACCOUNTS);
+        report("validate", chain, time(ledger::validate));
+    }
+
+    /**
+     * Creates a ledger with the given number of accounts, and funds the first of them
+     * in a committed block.
+     *
+     * @param accountCount number of accounts
+     * @return {@link Ledger}
+     */
+    private static Ledger fundedLedger(int accountCount) throws LedgerException {
+        Ledger ledger = new Ledger("benchmark", "ledger benchmark", "benchmark", BLOCK_SIZE);
+        ledger.fundLedger();
+        for (int i = 0; i < accountCount; i++) {
+            ledger.createAccount("account-" + i);
+        }
+        for (int i = 0; i < ACCOUNTS; i++) {
+            ledger.processTransaction(new Transaction(i + 1, FUNDING, 10, "fund", "master", "account-" + i));
+        }
+        ledger.sealOpenBlock();
+        return ledger;
+    }
+
+    /**
+     * Processes transfers between the funded accounts.
+     *
+     * @param ledger ledger
+     * @param firstId id of the first transaction
+     * @param count number of transactions
+     * @param accountCount number of funded accounts
+     * @return {@link int} id of the next transaction
+     */
+    private static int extend(Ledger ledger, int firstId, int count, int accountCount) throws LedgerException {
+        for (int id = firstId; id < firstId + count; id++) {
+            ledger.processTransaction(new Transaction(id, 1, 10, "transfer",
+                    "account-" + (id % accountCount), "account-" + ((id + 1) % accountCount)));
+        }
+        return firstId + count;
+    }
+
+    /**
+     * Returns the best time in nanoseconds over several runs, after warming up.
+     *
+     * @param operation work to time
+     * @return {@link double}
+     */
+    private static double time(Operation operation) throws Throwable {
+        return measure(() -> {
+            long start = System.nanoTime();
+            operation.run();
+            return System.nanoTime() - start;
+        });
+    }
+
+    /**
+     * Returns the best time in nanoseconds reported by several runs. The operation is first run
+     * for the warm up time, so that it is compiled, then at least ITERATIONS times and for at
+     * least the measurement time, so that short operations are not dominated by noise.
+     *
+     * @param measurement work that times itself
+     * @return {@link double}
+     */
+    private static double measure(Measurement measurement) throws Throwable {
+        long warmUpEnd = System.nanoTime() + WARM_UP_NANOS;
+        do {
+            measurement.run();
+        } while (System.nanoTime() < warmUpEnd);
+        long best = Long.MAX_VALUE;
+        long measureEnd = System.nanoTime() + MEASUREMENT_NANOS;
+        for (int i = 0; i < ITERATIONS || System.nanoTime() < measureEnd; i++) {
+            best = Math.min(best, measurement.run());
+        }
+        return best;
+    }
+
+    /**
+     * Prints and records the result of a benchmark, with its growth over the previous size.
+     *
+     * @param benchmark benchmark name
+     * @param size size
+     * @param nanos nanoseconds per operation
+     */
+    private static void report(String benchmark, int size, double nanos) {
+        Double previous = null;
+        for (Map.Entry<String, Double> result : results.entrySet()) {
+            if (result.getKey().startsWith(benchmark + " ")) {
+                previous = result.getValue();
+            }
+        }
+        results.put(benchmark + " " + size, nanos);
+        System.out.println(String.format("%-20s %10d %14.1f %8s", benchmark, size, nanos,
+                previous == null ? "" : String.format("%.2fx", nanos / previous)));
+    }
+
+    /**
+     * Compares the results with a baseline file, printing every benchmark that regressed.
+     *
+     * @param baseline baseline file
+     * @param tolerance largest allowed ratio of a result to its baseline
+     * @return {@link boolean} true if no benchmark regressed
+     */
+    private static boolean compare(String baseline, double tolerance) throws IOException {
+        boolean passed = true;
+        for (String line : Files.readAllLines(Paths.get(baseline), StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(" ");
+            Double result = results.get(fields[0] + " " + fields[1]);
+            double expected = Double.parseDouble(fields[2]);
+            if (result != null && result > expected * tolerance) {
+                System.out.println(String.format("regression: %s %s %.1f ns/op, baseline %.1f ns/op",
+                        fields[0], fields[1], result, expected));
+                passed = false;
+            }
+        }
+        return passed;
+    }
+}
@@ -0,0 +1,240 @@
+package com.cscie97.ledger.test;
+
+import com.cscie97.ledger.Block;
+import com.cscie97.ledger.Ledger;
+import com.cscie97.ledger.LedgerException;
+import com.cscie97.ledger.LedgerPipeline;
+import com.cscie97.ledger.Transaction;
+import com.cscie97.ledger.TransactionResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  Submits random transfers to one ledger from many threads at once and checks that
+ *  balances stay correct under contention.
+ *
+ *  Usage: LedgerStressTest [threads] [transactions-per-thread] [accounts] [block-size] [pipeline | batch]
+ *  A small number of accounts makes transactions contend for the same account locks.
+ *  With the pipeline option, transactions are submitted through a LedgerPipeline instead.
+ *  With the batch option, every other thread submits its transactions in batches of random size
+ *  through processTransactions, while the remaining threads submit them one at a time.
+ *  Some transfers involve the master account and some reuse transaction ids.
+ *  Once every thread has finished, the ledger is validated, and the committed blocks are
+ *  replayed in order from the initial balances: every transaction must be affordable at its
+ *  position, every accepted transaction must be committed exactly once, and the replayed balances
+ *  must equal the ledger's balances and total to the initial supply. Prints PASS or FAIL.
+ */
+public class LedgerStressTest {
+
+    private static final int FUNDING = 1000000;
+
+    public static void main(String[] args) throws Throwable {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int accountCount = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int blockSize = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        boolean pipelined = args.length > 4 && args[4].equals("pipeline");
+        boolean batched = args.length > 4 && args[4].equals("batch");
+
+        Ledger ledger = new Ledger("stress", "concurrent ingestion stress test", "stress", blockSize);
+        ledger.fundLedger();
+        String[] accounts = new String[accountCount];
+        AtomicInteger nextId = new AtomicInteger(1);
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = "account-" + i;
+            ledger.createAccount(accounts[i]);
+        }
+        for (String account : accounts) {
+            ledger.processTransaction(new Transaction(nextId.getAndIncrement(), FUNDING, 10, "fund", "master", account));
+        }
+        ledger.sealOpenBlock();
+        LedgerPipeline pipeline = pipelined ? new LedgerPipeline(ledger) : null;
+        if (pipeline != null) {
+            pipeline.start();
+        }
+
+        AtomicInteger accepted = new AtomicInteger(accountCount);
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger duplicatesAccepted = new AtomicInteger();
+        ArrayList<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            boolean batchThread = batched && t % 2 == 1;
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int lastAccepted = 0;
+                ArrayList<Transaction> batch = new ArrayList<Transaction>();
+                ArrayList<Boolean> batchDuplicates = new ArrayList<Boolean>();
+                int batchSize = 1 + random.nextInt(32);
+                for (int i = 0; i < perThread; i++) {
+                    String payer = random.nextInt(50) == 0 ? "master" : accounts[random.nextInt(accountCount)];
+                    String receiver = random.nextInt(50) == 0 ? "master" : accounts[random.nextInt(accountCount)];
+                    boolean duplicate = lastAccepted > 0 && random.nextInt(100) == 0;
+                    // a duplicate reuses the id of a transaction this thread has had accepted
+                    int id = duplicate ? lastAccepted : nextId.getAndIncrement();
+                    Transaction tx = new Transaction(id, random.nextInt(FUNDING / 50), 10 + random.nextInt(5),
+                            "stress", payer, receiver);
+                    if (batchThread) {
+                        batch.add(tx);
+                        batchDuplicates.add(duplicate);
+                        if (batch.size() < batchSize && i < perThread - 1) {
+                            continue;
+                        }
+                        try {
+                            List<TransactionResult> results = ledger.processTransactions(batch);
+                            for (int r = 0; r < results.size(); r++) {
+                                if (results.get(r).isAccepted()) {
+                                    accepted.incrementAndGet();
+                                    if (batchDuplicates.get(r)) {
+                                        duplicatesAccepted.incrementAndGet();
+                                    }
+                                    lastAccepted = batch.get(r).getTransactionId();
+                                } else {
+                                    rejected.incrementAndGet();
+                                }
+                            }
+                        } catch (LedgerException | RuntimeException e) {
+                            synchronized (failures) {
+                                failures.add(e);
+                            }
+                        }
+                        batch.clear();
+                        batchDuplicates.clear();
+                        batchSize = 1 + random.nextInt(32);
+                        continue;
+                    }
+                    try {
+                        if (pipeline != null) {
+                            submit(pipeline, tx);
+                        } else {
+                            ledger.processTransaction(tx);
+                        }
+                        accepted.incrementAndGet();
+                        if (duplicate) {
+                            duplicatesAccepted.incrementAndGet();
+                        }
+                        lastAccepted = id;
+                    } catch (LedgerException e) {
+                        rejected.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (pipeline != null) {
+            pipeline.close();
+        }
+        ledger.sealOpenBlock();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        ArrayList<String> errors = new ArrayList<String>();
+        for (Throwable failure : failures) {
+            errors.add("unexpected exception: " + failure);
+        }
+        if (duplicatesAccepted.get() > 0) {
+            errors.add(duplicatesAccepted.get() + " duplicate transaction ids were accepted");
+        }
+        try {
+            ledger.validate();
+        } catch (LedgerException e) {
+            errors.add("validate failed: " + e.getReason());
+        }
+        errors.addAll(replay(ledger, accounts, accepted.get()));
+
+        System.out.printf("%d threads%s, %d accounts, block size %d: %d accepted, %d rejected, %.0f tx/s%n",
+                threads, pipelined ? " (pipeline)" : batched ? " (batch)" : "", accountCount, blockSize, accepted.get(), rejected.get(),
+                (accepted.get() + rejected.get()) / seconds);
+        for (String error : errors) {
+            System.out.println(error);
+        }
+        System.out.println(errors.isEmpty() ? "PASS" : "FAIL");
+        if (!errors.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Submits a transaction through the pipeline and waits for its result.
+     *
+     * @param pipeline pipeline
+     * @param tx transaction
+     * @throws LedgerException if the transaction is rejected
+     */
+    private static void submit(LedgerPipeline pipeline, Transaction tx) throws LedgerException {
+        try {
+            pipeline.submit(tx).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof LedgerException) {
+                throw (LedgerException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Replays the committed blocks in order from the initial balances and compares the result with the ledger.
+     *
+     * @param ledger ledger
+     * @param accounts addresses of the non-master accounts
+     * @param accepted number of transactions the ledger accepted
+     * @return {@link ArrayList} description of each discrepancy found
+     * @throws LedgerException com.cscie97.ledger. ledger exception
+     */
+    private static ArrayList<String> replay(Ledger ledger, String[] accounts, int accepted) throws LedgerException {
+        ArrayList<String> errors = new ArrayList<String>();
+        HashMap<String, Long> balances = new HashMap<String, Long>();
+        balances.put("master", ledger.getInitialSupply());
+        for (String account : accounts) {
+            balances.put(account, 0L);
+        }
+        HashSet<Integer> ids = new HashSet<Integer>();
+        int lastBlock = ledger.getBlockMap().lastKey() - 1;
+        for (int n = 1; n <= lastBlock; n++) {
+            Block block = ledger.getBlock(n);
+            for (Transaction tx : block.getTransactionList()) {
+                if (!ids.add(tx.getTransactionId())) {
+                    errors.add("transaction " + tx.getTransactionId() + " committed more than once");
+                }
+                long cost = tx.getAmount() + tx.getFee();
+                if (balances.get(tx.getPayer()) < cost) {
+                    errors.add("transaction " + tx.getTransactionId() + " in block " + n + " overdraws " + tx.getPayer());
+                }
+                balances.put(tx.getPayer(), balances.get(tx.getPayer()) - cost);
+                balances.put(tx.getReceiver(), balances.get(tx.getReceiver()) + tx.getAmount());
+                balances.put("master", balances.get("master") + tx.getFee());
+            }
+        }
+        if (ids.size() != accepted) {
+            errors.add(ids.size() + " transactions committed, " + accepted + " accepted");
+        }
+        long total = 0;
+        for (Map.Entry<String, Long> entry : ledger.getAccountBalances().entrySet()) {
+            total += entry.getValue();
+            if (entry.getValue() < 0) {
+                errors.add(entry.getKey() + " has a negative balance");
+            }
+            if (!entry.getValue().equals(balances.get(entry.getKey()))) {
+                errors.add(entry.getKey() + " balance " + entry.getValue() + ", replayed " + balances.get(entry.getKey()));
+            }
+        }
+        if (total != ledger.getInitialSupply()) {
+            errors.add("balances total " + total + ", expected " + ledger.getInitialSupply());
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,227 @@
+package com.cscie97.ledger.test;
+
+import com.cscie97.ledger.LedgerServer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  Drives a LedgerServer from many connections at once and reports requests per second and
+ *  latency percentiles.
+ *
+ *  Usage: LoadGenerator [host] [port] [connections] [requests-per-connection] [pipeline-depth] [accounts]
+ *                       [first-transaction-id]
+ *  One setup connection creates the accounts and funds them from the master account, first closing
+ *  the open block with transfers from master to itself if the accounts must be committed. Then every
+ *  connection sends transfers between random accounts, with a balance query after every
+ *  ninth transfer, keeping up to pipeline-depth requests outstanding. The latency of a
+ *  request runs from writing it until its whole response has been read. Transaction ids are
+ *  numbered from first-transaction-id; to run the generator again against the same server, start
+ *  after the ids of the previous run, or its transfers are rejected as duplicates.
+ */
+public class LoadGenerator {
+
+    private static final long FUNDING = 1000000;
+
+    public static void main(String[] args) throws Throwable {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : LedgerServer.DEFAULT_PORT;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int perConnection = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+        int depth = args.length > 4 ? Integer.parseInt(args[4]) : 32;
+        int accountCount = args.length > 5 ? Integer.parseInt(args[5]) : 64;
+        int firstId = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+
+        // account names unique to this run
+        String run = Long.toString(System.nanoTime() % 1000000, 36);
+        String[] accounts = new String[accountCount];
+        AtomicInteger nextId = new AtomicInteger(firstId);
+        try (Socket socket = new Socket(host, port)) {
+            Session setup = new Session(socket);
+            for (int i = 0; i < accountCount; i++) {
+                accounts[i] = "load-" + run + "-" + i;
+                setup.send("create-account " + accounts[i]);
+            }
+            setup.flush();
+            int failures = 0;
+            for (int i = 0; i < accountCount; i++) {
+                failures += setup.receive() ? 0 : 1;
+            }
+            // after the first block, an account can only be paid once a block has committed it,
+            // so close the open block with transfers from master to itself until the accounts are committed
+            for (int fillers = 0; failures == 0 && !fund(setup, accounts[0], nextId); fillers++) {
+                if (fillers == 100000) {
+                    throw new IllegalStateException("accounts were not committed");
+                }
+                setup.send("process-transaction " + nextId.getAndIncrement()
+                        + " amount 1 fee 10 note \"fill\" payer master receiver master");
+                setup.flush();
+                failures += setup.receive() ? 0 : 1;
+            }
+            for (int i = 1; i < accountCount; i++) {
+                setup.send("process-transaction " + nextId.getAndIncrement() + " amount " + FUNDING
+                        + " fee 10 note \"fund\" payer master receiver " + accounts[i]);
+            }
+            setup.flush();
+            for (int i = 1; i < accountCount; i++) {
+                failures += setup.receive() ? 0 : 1;
+            }
+            if (failures > 0) {
+                throw new IllegalStateException(failures + " setup commands failed, the last with:\n"
+                        + String.join("\n", setup.lastFailure));
+            }
+        }
+
+        long[][] latencies = new long[connections][];
+        int[] errors = new int[connections];
+        Thread[] threads = new Thread[connections];
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int connection = c;
+            threads[c] = new Thread(() -> {
+                try (Socket socket = new Socket(host, port)) {
+                    Session session = new Session(socket);
+                    long[] sent = new long[depth];
+                    long[] measured = new long[perConnection];
+                    Random random = new Random(connection);
+                    int sentCount = 0;
+                    int received = 0;
+                    while (received < perConnection) {
+                        // fill the pipeline, then wait for the oldest response
+                        while (sentCount < perConnection && sentCount - received < depth) {
+                            String payer = accounts[random.nextInt(accountCount)];
+                            String receiver = accounts[random.nextInt(accountCount)];
+                            session.send(sentCount % 10 == 9 ? "get-account-balance " + payer
+                                    : "process-transaction " + nextId.getAndIncrement()
+                                    + " amount 1 fee 10 note \"load\" payer " + payer + " receiver " + receiver);
+                            sent[sentCount % depth] = System.nanoTime();
+                            sentCount++;
+                        }
+                        session.flush();
+                        if (!session.receive()) {
+                            errors[connection]++;
+                        }
+                        measured[received] = System.nanoTime() - sent[received % depth];
+                        received++;
+                    }
+                    latencies[connection] = measured;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] all = new long[connections * perConnection];
+        int errorCount = 0;
+        for (int c = 0; c < connections; c++) {
+            System.arraycopy(latencies[c], 0, all, c * perConnection, perConnection);
+            errorCount += errors[c];
+        }
+        Arrays.sort(all);
+        System.out.println(String.format("%d requests on %d connections, pipeline depth %d, in %.2f s",
+                all.length, connections, depth, seconds));
+        System.out.println(String.format("%.0f requests/s, %d rejected", all.length / seconds, errorCount));
+        System.out.println(String.format("latency us: p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f",
+                percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1] / 1e3));
+    }
+
+    /**
+     * Funds an account from the master account.
+     *
+     * @param session session
+     * @param account account address
+     * @param nextId next transaction id
+     * @return {@link boolean} false if the transfer was rejected
+     */
+    private static boolean fund(Session session, String account, AtomicInteger nextId) throws IOException {
+        session.send("process-transaction " + nextId.getAndIncrement() + " amount " + FUNDING
+                + " fee 10 note \"fund\" payer master receiver " + account);
+        session.flush();
+        return session.receive();
+    }
+
+    /**
+     * Returns a latency percentile in microseconds.
+     *
+     * @param sorted sorted latencies in nanoseconds
+     * @param fraction fraction
+     * @return {@link double}
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e3;
+    }
+
+    /**
+     * Writes requests to a server connection, and reads their responses.
+     */
+    private static final class Session {
+        private final Writer out;
+        private final BufferedReader in;
+        // response to the last command that failed
+        private List<String> lastFailure;
+
+        Session(Socket socket) throws IOException {
+            socket.setTcpNoDelay(true);
+            this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        void send(String command) throws IOException {
+            out.write(command);
+            out.write('\n');
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Reads one response.
+         *
+         * @return {@link boolean} false if the command failed
+         */
+        boolean receive() throws IOException {
+            List<String> lines = receiveLines();
+            for (String line : lines) {
+                if (line.startsWith("CommandProcessorException") || line.startsWith("Error:")) {
+                    lastFailure = lines;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reads the lines of one response.
+         *
+         * @return {@link List}
+         */
+        List<String> receiveLines() throws IOException {
+            ArrayList<String> lines = new ArrayList<String>();
+            String line;
+            while ((line = in.readLine()) != null && !line.equals(LedgerServer.END_OF_RESPONSE)) {
+                lines.add(line);
+            }
+            if (line == null) {
+                throw new IOException("server closed the connection");
+            }
+            return lines;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.cscie97.ledger.test;
+
+import com.cscie97.ledger.MerkleProof;
+import com.cscie97.ledger.MerkleTree;
+import com.cscie97.ledger.ParallelMerkleTree;
+import com.cscie97.ledger.Sha256;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *  Measures merkle root construction time by leaf count and core count,
+ *  comparing the sequential MerkleTree with the ParallelMerkleTree.
+ *
+ *  Usage: MerkleBenchmark [max-leaves]
+ *  First checks the parallel trees against the sequential tree for leaf counts that are not
+ *  powers of two, including every level and an inclusion proof for every leaf. Then prints one
+ *  row per leaf count with the sequential time and the parallel time and speedup for each pool
+ *  size, and fails if any parallel root differs.
+ */
+public class MerkleBenchmark {
+
+    private static final int ITERATIONS = 5;
+
+    /** Leaf counts checked before timing, chosen so odd levels and uneven splits occur. */
+    private static final int[] CHECKED_LEAVES = { 1, 2, 3, 5, 1023, 1024, 1025, 3000 };
+
+    public static void main(String[] args) {
+        int maxLeaves = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        ArrayList<Integer> poolSizes = new ArrayList<Integer>();
+        for (int p = 1; p < cores; p *= 2) {
+            poolSizes.add(p);
+        }
+        poolSizes.add(cores);
+
+        StringBuilder header = new StringBuilder(String.format("%10s %12s", "leaves", "seq ms"));
+        for (int p : poolSizes) {
+            header.append(String.format(" %14s", p + " cores ms/x"));
+        }
+        for (int p : poolSizes) {
+            ForkJoinPool pool = new ForkJoinPool(p);
+            for (int leaves : CHECKED_LEAVES) {
+                // a small threshold splits every level, the default one splits only large ones
+                check(new ParallelMerkleTree(pool, 2), transactions(leaves));
+                check(new ParallelMerkleTree(pool, 1024), transactions(leaves));
+            }
+            pool.shutdown();
+        }
+        System.out.println("checked " + Arrays.toString(CHECKED_LEAVES) + " leaves on " + poolSizes + " cores");
+
+        System.out.println(header);
+
+        for (int leaves = 1024; leaves <= maxLeaves; leaves *= 4) {
+            ArrayList<String> transactions = transactions(leaves);
+            String expected = MerkleTree.createMerkleTree(transactions);
+            double sequential = time(() -> MerkleTree.createMerkleTree(transactions));
+            StringBuilder row = new StringBuilder(String.format("%10d %12.2f", leaves, sequential));
+            for (int p : poolSizes) {
+                ForkJoinPool pool = new ForkJoinPool(p);
+                ParallelMerkleTree builder = new ParallelMerkleTree(pool, 1024);
+                if (!builder.createMerkleTree(transactions).equals(expected)) {
+                    throw new IllegalStateException("parallel root differs for " + leaves + " leaves");
+                }
+                double parallel = time(() -> builder.createMerkleTree(transactions));
+                row.append(String.format(" %8.2f/%4.1fx", parallel, sequential / parallel));
+                pool.shutdown();
+            }
+            System.out.println(row);
+        }
+    }
+
+    /**
+     * Returns the given number of benchmark transaction strings.
+     *
+     * @param leaves number of transactions
+     * @return {@link ArrayList}
+     */
+    private static ArrayList<String> transactions(int leaves) {
+        ArrayList<String> transactions = new ArrayList<String>(leaves);
+        for (int i = 0; i < leaves; i++) {
+            transactions.add("10" + "1000" + "\"benchmark\"" + "payer" + "receiver" + i);
+        }
+        return transactions;
+    }
+
+    /**
+     * Checks that the parallel tree builds the same root and levels as the sequential tree,
+     * and that the proof of every leaf verifies against the root and rejects another leaf.
+     *
+     * @param builder parallel tree builder
+     * @param transactions transaction strings
+     */
+    private static void check(ParallelMerkleTree builder, ArrayList<String> transactions) {
+        int leaves = transactions.size();
+        String expected = MerkleTree.createMerkleTree(transactions);
+        if (!builder.createMerkleTree(transactions).equals(expected)) {
+            throw new IllegalStateException("parallel root differs for " + leaves + " leaves");
+        }
+        byte[][] levels = builder.buildLevels(transactions);
+        if (!Arrays.deepEquals(levels, MerkleTree.buildLevels(transactions))) {
+            throw new IllegalStateException("parallel levels differ for " + leaves + " leaves");
+        }
+        byte[] root = Sha256.fromHex(expected);
+        if (!Arrays.equals(MerkleTree.root(levels), root)) {
+            throw new IllegalStateException("level root differs for " + leaves + " leaves");
+        }
+        byte[] other = Sha256.digest("not a leaf".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < leaves; i++) {
+            MerkleProof proof = MerkleTree.createProof(levels, i);
+            byte[] leaf = Sha256.digest(transactions.get(i).getBytes(StandardCharsets.UTF_8));
+            if (!proof.verify(leaf, root) || proof.verify(other, root)) {
+                throw new IllegalStateException("proof of leaf " + i + " fails for " + leaves + " leaves");
+            }
+        }
+    }
+
+    /**
+     * Returns the best time in milliseconds over several runs, after a warm up run.
+     *
+     * @param run work to time
+     * @return {@link double}
+     */
+    private static double time(Runnable run) {
+        run.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+}